@@ -9,51 +9,159 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Booking {
+    // firstSeat of bookings without assigned seats: facilities other than seating sections, and
+    // parties no row had room for
+    public static final int NO_SEATS = -1;
     private static final int TOTAL_UNITS = 100; // Example total units, adjust as needed
-    private final StringProperty facilityName;
-    private final ObjectProperty<LocalDate> bookingDate; // Use LocalDate for better handling
-    private final StringProperty bookingTime; // Format: HH:mm
+
+    // Bookings are kept compact: the ID, the facility's int key, the packed slot, the unit count,
+    // the duration and the first seat, 48 bytes in all. JavaFX properties are only created when a
+    // GUI actually binds to them.
+    private final long id; // Confirmation number, see BookingIds; 0 for bookings never stored
+    private final int facility; // See FacilityKeys
+    private final long slot; // Packed date and time, see BookingSlot
+    private final int bookedUnits;
+    private final int durationMinutes; // 0 for bookings that only claim their start slot
+    private final int firstSeat; // First of bookedUnits adjacent seats in one row, or NO_SEATS
+    private Properties properties;
 
     // Constructor for GUI
     public Booking(String facilityName, LocalDate bookingDate, String bookingTime) {
-        this.facilityName = new SimpleStringProperty(facilityName);
-        this.bookingDate = new SimpleObjectProperty<>(bookingDate);
-        this.bookingTime = new SimpleStringProperty(bookingTime);
+        this(facilityName, BookingSlot.pack(bookingDate, bookingTime));
     }
 
     // Constructor for console-based input
     public Booking(String facilityName, String bookingDate, String bookingTime) {
-        this.facilityName = new SimpleStringProperty(facilityName);
-        this.bookingDate = new SimpleObjectProperty<>(LocalDate.parse(bookingDate, DateTimeFormatter.ISO_DATE));
-        this.bookingTime = new SimpleStringProperty(bookingTime);
+        this(facilityName, LocalDate.parse(bookingDate, DateTimeFormatter.ISO_DATE), bookingTime);
+    }
+
+    public Booking(String facilityName, long slot) {
+        this(facilityName, slot, 1);
+    }
+
+    public Booking(String facilityName, long slot, int bookedUnits) {
+        this(facilityName, slot, bookedUnits, 0);
+    }
+
+    public Booking(String facilityName, long slot, int bookedUnits, int durationMinutes) {
+        this(0, facilityName, slot, bookedUnits, durationMinutes);
+    }
+
+    public Booking(long id, String facilityName, long slot, int bookedUnits, int durationMinutes) {
+        this(id, facilityName, slot, bookedUnits, durationMinutes, NO_SEATS);
     }
 
-    // Static list to store all bookings
-    public static List<Booking> bookings = new ArrayList<>();
+    public Booking(long id, String facilityName, long slot, int bookedUnits, int durationMinutes, int firstSeat) {
+        this(id, FacilityKeys.of(facilityName), slot, bookedUnits, durationMinutes, firstSeat);
+    }
+
+    public Booking(long id, int facility, long slot, int bookedUnits, int durationMinutes, int firstSeat) {
+        this.id = id;
+        this.facility = facility;
+        this.slot = slot;
+        this.bookedUnits = bookedUnits;
+        this.durationMinutes = durationMinutes;
+        this.firstSeat = firstSeat;
+    }
+
+    // Static store holding all bookings, indexed by facility, date and time
+    public static final BookingStore bookings = new BookingStore();
+    // Time-interval occupancy of bookings that have a duration (conference room meetings)
+    public static final OccupancyCalendar occupancy = new OccupancyCalendar();
+    // Latency and outcome statistics of the booking operations
+    public static final BookingMetrics metrics = new BookingMetrics();
 
     // Method to make a booking
     public static void makeBooking(String facilityName, String bookingDate, String bookingTime) {
         // Validate date format
-        if (!bookingDate.matches("^\\d{4}-\\d{2}-\\d{2}$")) {
+        long epochDay = BookingSlot.parseEpochDay(bookingDate);
+        if (epochDay == BookingSlot.INVALID) {
             throw new IllegalArgumentException("Invalid date format. Use yyyy-MM-dd.");
         }
 
         // Validate time format
-        if (!bookingTime.matches("^([01]?\\d|2[0-3]):[0-5]\\d$")) {
+        int minuteOfDay = BookingSlot.parseMinuteOfDay(bookingTime);
+        if (minuteOfDay < 0) {
             throw new IllegalArgumentException("Invalid time format. Use HH:mm.");
         }
 
         // Validate that the date is not in the past
-        LocalDate today = LocalDate.now();
-        LocalDate enteredDate = LocalDate.parse(bookingDate, DateTimeFormatter.ISO_DATE);
-        if (enteredDate.isBefore(today)) {
+        if (epochDay < BookingSlot.today()) {
             throw new IllegalArgumentException("Cannot book for a past date. Please select a valid date.");
         }
 
-        // Add the booking to the list
-        bookings.add(new Booking(facilityName, bookingDate, bookingTime));
+        makeBooking(facilityName, BookingSlot.pack(epochDay, minuteOfDay));
+    }
+
+    // Method to make a booking for an already validated slot
+    public static void makeBooking(String facilityName, long slot) {
+        makeBooking(facilityName, slot, 1);
+    }
+
+    public static void makeBooking(String facilityName, long slot, int bookedUnits) {
+        makeBooking(facilityName, slot, bookedUnits, 0);
+    }
+
+    public static void makeBooking(String facilityName, long slot, int bookedUnits, int durationMinutes) {
+        if (!addBooking(facilityName, slot, bookedUnits, durationMinutes)) {
+            throw new IllegalArgumentException("A booking already exists for this facility at the specified date and time.");
+        }
         System.out.println("Booking made successfully for " + facilityName + " on "
-                + bookingDate + " at " + bookingTime + "!");
+                + BookingSlot.formatDate(slot) + " at " + BookingSlot.formatTime(slot) + "!");
+    }
+
+    // Adds a booking without validation or console output; returns false if the slot or interval is taken
+    public static boolean addBooking(String facilityName, long slot, int bookedUnits, int durationMinutes) {
+        return createBooking(facilityName, slot, bookedUnits, durationMinutes) != null;
+    }
+
+    // Same as addBooking, but returns the stored booking, or null if the slot or interval is taken
+    public static Booking createBooking(String facilityName, long slot, int bookedUnits, int durationMinutes) {
+        return createBooking(0, facilityName, slot, bookedUnits, durationMinutes);
+    }
+
+    // Stores a booking under the given ID (e.g. one being restored or amended), or under a new
+    // one if the ID is 0
+    public static Booking createBooking(long id, String facilityName, long slot, int bookedUnits, int durationMinutes) {
+        return createBooking(id, facilityName, slot, bookedUnits, durationMinutes, NO_SEATS);
+    }
+
+    // Same, for a booking holding the given seats; taking them is up to the caller
+    public static Booking createBooking(long id, String facilityName, long slot, int bookedUnits, int durationMinutes,
+                                        int firstSeat) {
+        return createBooking(id, FacilityKeys.of(facilityName), slot, bookedUnits, durationMinutes, firstSeat);
+    }
+
+    // Same, for a facility already resolved to its key (see FacilityKeys)
+    public static Booking createBooking(long id, int facility, long slot, int bookedUnits, int durationMinutes,
+                                        int firstSeat) {
+        if (durationMinutes > 0 && !occupancy.isFree(facility, slot, durationMinutes)) {
+            return null;
+        }
+        // Add the booking to the store
+        Booking booking = new Booking(id != 0 ? id : BookingIds.next(facility), facility, slot, bookedUnits, durationMinutes,
+                firstSeat);
+        if (!bookings.add(booking)) {
+            return null;
+        }
+        if (durationMinutes > 0) {
+            occupancy.occupy(facility, slot, durationMinutes);
+        }
+        return booking;
+    }
+
+    // Removes and returns the booking without console output, or returns null if there is none
+    public static Booking removeBooking(String facilityName, long slot) {
+        return removeBooking(FacilityKeys.find(facilityName), slot);
+    }
+
+    // Same, for a facility already resolved to its key (see FacilityKeys)
+    public static Booking removeBooking(int facility, long slot) {
+        Booking removed = bookings.remove(facility, slot);
+        if (removed != null && removed.durationMinutes > 0) {
+            occupancy.release(facility, slot, removed.durationMinutes);
+        }
+        return removed;
     }
 
     // Method to view all bookings (returns a list of formatted booking strings)
@@ -62,7 +170,7 @@ public class Booking {
         if (bookings.isEmpty()) {
             bookingStrings.add("No bookings found.");
         } else {
-            for (Booking booking : bookings) {
+            for (Booking booking : bookings.inTimeOrder()) {
                 bookingStrings.add(booking.toString());
             }
         }
@@ -71,35 +179,62 @@ public class Booking {
 
     // Method to cancel a booking
     public static boolean cancelBooking(String facilityName, String bookingDate, String bookingTime) {
-        boolean isRemoved = bookings.removeIf(b ->
-                b.getFacilityName().equalsIgnoreCase(facilityName) &&
-                        b.getBookingDate().equals(LocalDate.parse(bookingDate, DateTimeFormatter.ISO_DATE)) &&
-                        b.getBookingTime().equalsIgnoreCase(bookingTime)
-        );
+        return cancelBooking(facilityName, parseSlot(bookingDate, bookingTime));
+    }
+
+    public static boolean cancelBooking(String facilityName, long slot) {
+        boolean isRemoved = removeBooking(facilityName, slot) != null;
 
         if (isRemoved) {
             System.out.println("Booking canceled successfully for " + facilityName + " on "
-                    + bookingDate + " at " + bookingTime + "!");
+                    + BookingSlot.formatDate(slot) + " at " + BookingSlot.formatTime(slot) + "!");
         } else {
             System.out.println("Booking not found.");
         }
         return isRemoved;
     }
 
-    // Method to check if a facility is available for a specific date and time
+    // Method to check if a facility is available for a specific date and time, for a booking of
+    // the default meeting length (see ConferenceRoom). Bookings of other facilities have no length,
+    // so for them only the slot itself has to be free.
     public static boolean isAvailable(String facilityName, String bookingDate, String bookingTime) {
-        return bookings.stream().noneMatch(b ->
-                b.getFacilityName().equalsIgnoreCase(facilityName) &&
-                        b.getBookingDate().equals(LocalDate.parse(bookingDate, DateTimeFormatter.ISO_DATE)) &&
-                        b.getBookingTime().equalsIgnoreCase(bookingTime)
-        );
+        return isAvailable(facilityName, parseSlot(bookingDate, bookingTime));
+    }
+
+    public static boolean isAvailable(String facilityName, long slot) {
+        return isAvailable(facilityName, slot, ConferenceRoom.DEFAULT_BOOKING_MINUTES);
+    }
+
+    // Same, for a facility already resolved to its key (see FacilityKeys)
+    public static boolean isAvailable(int facility, long slot) {
+        return isAvailable(facility, slot, ConferenceRoom.DEFAULT_BOOKING_MINUTES);
+    }
+
+    // Checks the slot and the whole interval [slot, slot + durationMinutes) against the occupancy
+    // bitmap; a duration of 0 checks the slot alone
+    public static boolean isAvailable(String facilityName, long slot, int durationMinutes) {
+        return isAvailable(FacilityKeys.find(facilityName), slot, durationMinutes);
+    }
+
+    public static boolean isAvailable(int facility, long slot, int durationMinutes) {
+        long start = System.nanoTime();
+        boolean available = !bookings.contains(facility, slot)
+                && (durationMinutes <= 0 || occupancy.isFree(facility, slot, durationMinutes));
+        metrics.record(BookingMetrics.Operation.AVAILABILITY, available ? BookingStatus.SUCCESS : BookingStatus.CONFLICT, start);
+        return available;
+    }
+
+    private static long parseSlot(String bookingDate, String bookingTime) {
+        long slot = BookingSlot.parse(bookingDate, bookingTime);
+        if (slot == BookingSlot.INVALID) {
+            throw new IllegalArgumentException("Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        return slot;
     }
 
     // Method to get the number of booked units for a facility
     public static int getBookedUnits(String facilityName) {
-        return (int) bookings.stream()
-                .filter(b -> b.getFacilityName().equalsIgnoreCase(facilityName))
-                .count();
+        return bookings.countForFacility(facilityName);
     }
 
     // Method to get the number of available units for a facility
@@ -108,44 +243,93 @@ public class Booking {
     }
 
     // Getters and properties for GUI binding
+    public long getId() {
+        return id;
+    }
+
+    // The facility's name as it was first spelled, normally the one it was created with
     public String getFacilityName() {
-        return facilityName.get();
+        return FacilityKeys.name(facility);
+    }
+
+    public int getFacilityKey() {
+        return facility;
     }
 
     public StringProperty facilityNameProperty() {
-        return facilityName;
+        return properties().facilityName;
     }
 
     public LocalDate getBookingDate() {
-        return bookingDate.get();
+        return BookingSlot.toLocalDate(slot);
     }
 
     public ObjectProperty<LocalDate> bookingDateProperty() {
-        return bookingDate;
+        return properties().bookingDate;
     }
 
     public String getBookingTime() {
-        return bookingTime.get();
+        return BookingSlot.formatTime(slot);
     }
 
     public StringProperty bookingTimeProperty() {
-        return bookingTime;
+        return properties().bookingTime;
     }
 
     public ObservableValue<LocalDate> dateProperty() {
-        return bookingDate;
+        return properties().bookingDate;
     }
 
     public LocalDate getDate() {
-        return bookingDate.get();
+        return getBookingDate();
     }
 
     public String getTime() {
-        return bookingTime.get();
+        return getBookingTime();
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public int getBookedUnits() {
+        return bookedUnits;
+    }
+
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public int getFirstSeat() {
+        return firstSeat;
+    }
+
+    public boolean hasSeats() {
+        return firstSeat != NO_SEATS;
+    }
+
+    // Properties are only needed while a row is bound to a table cell, so create them on first use
+    private Properties properties() {
+        if (properties == null) {
+            properties = new Properties(this);
+        }
+        return properties;
     }
 
     @Override
     public String toString() {
-        return facilityName.get() + " - " + bookingDate.get().format(DateTimeFormatter.ISO_DATE) + " - ";
+        return (id != 0 ? "#" + id + " " : "") + getFacilityName() + " - " + getBookingDate().format(DateTimeFormatter.ISO_DATE) + " - " + getBookingTime();
+    }
+
+    private static final class Properties {
+        private final StringProperty facilityName;
+        private final ObjectProperty<LocalDate> bookingDate;
+        private final StringProperty bookingTime;
+
+        Properties(Booking booking) {
+            facilityName = new SimpleStringProperty(booking.getFacilityName());
+            bookingDate = new SimpleObjectProperty<>(booking.getBookingDate());
+            bookingTime = new SimpleStringProperty(booking.getBookingTime());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Append-only, compressed store for bookings moved out of the live structures. Every sweep appends
+// one block: a header [int length][int crc32][long cutoff][long minSlot][long maxSlot][int count],
+// then length bytes of gzip-compressed records grouped by facility. The CRC covers everything
+// after itself: the rest of the header and the payload
+// ([UTF facility][int n], then n times [long slot][int units][int duration][long id]).
+// Queries read the headers and only decompress blocks whose slot range overlaps the query, one
+// block at a time. A block torn by a crash is dropped when the archive is opened.
+public class BookingArchive implements AutoCloseable {
+    private static final int HEADER_BYTES = 36;
+    // The length and the CRC itself are not part of the checksummed range
+    private static final int CHECKSUM_FROM = 8;
+
+    private final FileChannel channel;
+    // Everything before this slot has been archived
+    private long cutoff = Long.MIN_VALUE;
+    private long blocks;
+    private long archivedBookings;
+
+    // Receives the archived bookings a query matches
+    public interface Visitor {
+        void archived(long id, String facilityName, long slot, int bookedUnits, int durationMinutes);
+    }
+
+    private BookingArchive(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Opens (or creates) the archive, checking every block header and dropping a torn tail
+    public static BookingArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BookingArchive archive = new BookingArchive(channel);
+        try {
+            archive.recover();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return archive;
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            int checksum = header.getInt();
+            if (!checksumMatches(position + CHECKSUM_FROM, HEADER_BYTES - CHECKSUM_FROM + length, checksum)) {
+                break;
+            }
+            cutoff = Math.max(cutoff, header.getLong());
+            header.getLong(); // minSlot
+            header.getLong(); // maxSlot
+            archivedBookings += header.getInt();
+            blocks++;
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            System.out.println("Archive: discarding " + (size - position) + " bytes of a damaged or incomplete block.");
+            channel.truncate(position);
+        }
+        channel.position(position);
+    }
+
+    private boolean checksumMatches(long from, int length, int checksum) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, 1 << 16));
+        for (long position = from, end = from + length; position < end; ) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            readFully(buffer, position);
+            buffer.flip();
+            position += buffer.remaining();
+            crc.update(buffer);
+        }
+        return (int) crc.getValue() == checksum;
+    }
+
+    // Slot before which everything has been archived, or Long.MIN_VALUE if nothing has
+    public synchronized long getCutoff() {
+        return cutoff;
+    }
+
+    public synchronized long getArchivedBookings() {
+        return archivedBookings;
+    }
+
+    public synchronized long getBlocks() {
+        return blocks;
+    }
+
+    // Appends the bookings (all before cutoffSlot) as one block and fsyncs it
+    public synchronized void append(long cutoffSlot, List<Booking> bookings) throws IOException {
+        long minSlot = Long.MAX_VALUE;
+        long maxSlot = Long.MIN_VALUE;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(compressed, 1 << 16))) {
+            for (int from = 0; from < bookings.size(); ) {
+                // Callers hand over each facility's bookings together
+                String facilityName = bookings.get(from).getFacilityName();
+                int to = from;
+                while (to < bookings.size() && bookings.get(to).getFacilityName().equals(facilityName)) {
+                    to++;
+                }
+                out.writeUTF(facilityName);
+                out.writeInt(to - from);
+                for (int i = from; i < to; i++) {
+                    Booking booking = bookings.get(i);
+                    out.writeLong(booking.getSlot());
+                    out.writeInt(booking.getBookedUnits());
+                    out.writeInt(booking.getDurationMinutes());
+                    out.writeLong(booking.getId());
+                    minSlot = Math.min(minSlot, booking.getSlot());
+                    maxSlot = Math.max(maxSlot, booking.getSlot());
+                }
+                from = to;
+            }
+        }
+        byte[] payload = compressed.toByteArray();
+        ByteBuffer block = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        block.putInt(payload.length).putInt(0).putLong(cutoffSlot)
+                .putLong(minSlot).putLong(maxSlot).putInt(bookings.size()).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), CHECKSUM_FROM, block.capacity() - CHECKSUM_FROM);
+        block.putInt(4, (int) crc.getValue()).flip();
+        long start = channel.position();
+        try {
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            channel.truncate(start); // leave no half-written block behind
+            channel.position(start);
+            throw e;
+        }
+        cutoff = Math.max(cutoff, cutoffSlot);
+        archivedBookings += bookings.size();
+        blocks++;
+    }
+
+    // Feeds every archived booking with fromSlot <= slot < toSlot (and of the facility, unless it
+    // is null) to the visitor, in the order they were archived
+    public synchronized void query(String facilityName, long fromSlot, long toSlot, Visitor visitor) throws IOException {
+        String facility = facilityName == null ? null : BookingStore.normalize(facilityName);
+        long end = channel.position();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        for (long position = 0; position < end; ) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            header.getInt(); // checksum, verified when the archive was opened
+            header.getLong(); // cutoff
+            long minSlot = header.getLong();
+            long maxSlot = header.getLong();
+            int count = header.getInt();
+            if (maxSlot >= fromSlot && minSlot < toSlot) {
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(payload, position + HEADER_BYTES);
+                readBlock(payload.array(), count, facility, fromSlot, toSlot, visitor);
+            }
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    // Convenience form of query for reports, returning detached Booking objects with their IDs
+    public List<Booking> find(String facilityName, long fromSlot, long toSlot) throws IOException {
+        List<Booking> found = new ArrayList<>();
+        query(facilityName, fromSlot, toSlot, (id, name, slot, units, duration) -> found.add(new Booking(id, name, slot, units, duration)));
+        return found;
+    }
+
+    private static void readBlock(byte[] payload, int count, String facility, long fromSlot, long toSlot,
+                                  Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(payload), 1 << 16))) {
+            for (int read = 0; read < count; ) {
+                String name = in.readUTF();
+                int group = in.readInt();
+                boolean wanted = facility == null || BookingStore.normalize(name).equals(facility);
+                read += group;
+                for (int i = 0; i < group; i++) {
+                    long slot = in.readLong();
+                    int units = in.readInt();
+                    int duration = in.readInt();
+                    long id = in.readLong();
+                    if (wanted && slot >= fromSlot && slot < toSlot) {
+                        visitor.archived(id, name, slot, units, duration);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Archive ends unexpectedly at " + position + ".");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
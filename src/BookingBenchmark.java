@@ -0,0 +1,318 @@
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Micro-benchmarks for the booking hot paths. Each case is run for every combination of
+// preloaded booking count, facility count and thread count: one warm-up iteration, then several
+// timed iterations reporting ns/op, throughput, bytes allocated per op and GC activity.
+// State changed by an iteration is undone (untimed) before the next one, so every iteration
+// runs against the same number of bookings.
+//
+// Usage: java BookingBenchmark [--bookings 1000,100000,1000000] [--facilities 1,100]
+//                              [--threads 1,4] [--ops 200000] [--iterations 5] [--only name,...]
+// Large booking counts (10M) need a bigger heap, e.g. -Xmx4g.
+public class BookingBenchmark {
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private int[] bookingCounts = {1_000, 100_000, 1_000_000};
+    private int[] facilityCounts = {1, 100};
+    private int[] threadCounts = {1, 4};
+    private int operations = 200_000;
+    private int iterations = 5;
+    private List<String> only = new ArrayList<>();
+
+    // State shared by all cases of one configuration
+    private int bookings;
+    private String[] names;
+    private StadiumFacility[] facilities;
+    private StadiumManager manager;
+    private long firstSlot;
+    private long nextSlot; // first slot not used by preloaded or earlier benchmark bookings
+    private String[] dates;
+    private String[] times;
+
+    // One benchmarked operation. op(i) is called for i in [from, to); undo reverts what the
+    // operations of an iteration changed and is not timed.
+    private interface Case {
+        default void prepare(int from, int to) {
+        }
+
+        // Upper bound on operations per iteration, e.g. the number of bookings that can be canceled
+        default int maxOperations() {
+            return Integer.MAX_VALUE;
+        }
+
+        void op(int i);
+
+        default void undo(int from, int to) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BookingBenchmark benchmark = new BookingBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.runAll();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--bookings":
+                    bookingCounts = parseInts(value);
+                    break;
+                case "--facilities":
+                    facilityCounts = parseInts(value);
+                    break;
+                case "--threads":
+                    threadCounts = parseInts(value);
+                    break;
+                case "--ops":
+                    operations = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "--only":
+                    only = Arrays.asList(value.split(","));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private static int[] parseInts(String value) {
+        return Arrays.stream(value.split(",")).mapToInt(v -> Integer.parseInt(v.trim().replace("_", ""))).toArray();
+    }
+
+    private void runAll() throws Exception {
+        CONSOLE.printf("%-28s %10s %6s %4s %12s %14s %10s %12s%n",
+                "benchmark", "bookings", "facil", "thr", "ns/op", "ops/s", "B/op", "gc (ms)");
+        for (int bookingCount : bookingCounts) {
+            for (int facilityCount : facilityCounts) {
+                setUp(bookingCount, facilityCount);
+                for (int threads : threadCounts) {
+                    run("Booking.makeBooking", threads, new Case() {
+                        @Override
+                        public void op(int i) {
+                            Booking.makeBooking(names[i % names.length], nextSlot + i, 1);
+                        }
+
+                        @Override
+                        public void undo(int from, int to) {
+                            for (int i = from; i < to; i++) {
+                                Booking.removeBooking(names[i % names.length], nextSlot + i);
+                            }
+                        }
+                    });
+                    run("Booking.isAvailable", threads, i -> {
+                        // Roughly half the probes hit a preloaded booking
+                        long slot = firstSlot + (i * 7919L) % (2L * bookings / names.length + 1);
+                        Booking.isAvailable(names[i % names.length], slot);
+                    });
+                    run("Booking.cancelBooking", threads, new Case() {
+                        @Override
+                        public int maxOperations() {
+                            return bookings;
+                        }
+
+                        @Override
+                        public void op(int i) {
+                            int booking = i % bookings;
+                            Booking.cancelBooking(names[booking % names.length], preloadedSlot(booking));
+                        }
+
+                        @Override
+                        public void undo(int from, int to) {
+                            for (int i = from; i < to; i++) {
+                                int booking = i % bookings;
+                                Booking.addBooking(names[booking % names.length], preloadedSlot(booking), 1, 0);
+                            }
+                        }
+                    });
+                    run("Booking.getBookedUnits", threads, i -> Booking.getBookedUnits(names[i % names.length]));
+                    run("StadiumManager.makeBooking", threads, new Case() {
+                        private int preparedFrom;
+
+                        @Override
+                        public void prepare(int from, int to) {
+                            // Formatting the input strings is not part of the measured call
+                            dates = new String[to - from];
+                            times = new String[to - from];
+                            for (int i = from; i < to; i++) {
+                                dates[i - from] = BookingSlot.formatDate(nextSlot + i);
+                                times[i - from] = BookingSlot.formatTime(nextSlot + i);
+                            }
+                            preparedFrom = from;
+                        }
+
+                        @Override
+                        public void op(int i) {
+                            manager.makeBooking(names[i % names.length], dates[i - preparedFrom], times[i - preparedFrom]);
+                        }
+
+                        // Through the manager, so the units and the seats the booking took are freed too
+                        @Override
+                        public void undo(int from, int to) {
+                            for (int i = from; i < to; i++) {
+                                manager.cancel(names[i % names.length], nextSlot + i);
+                            }
+                        }
+                    });
+                    run("StadiumFacility.bookUnits", threads, new Case() {
+                        @Override
+                        public void op(int i) {
+                            facilities[i % facilities.length].bookUnits(1);
+                        }
+
+                        @Override
+                        public void undo(int from, int to) {
+                            for (int i = from; i < to; i++) {
+                                facilities[i % facilities.length].release(1);
+                            }
+                        }
+                    });
+                }
+                tearDown();
+            }
+        }
+    }
+
+    // Registers the facilities and preloads bookingCount bookings spread evenly over them
+    private void setUp(int bookingCount, int facilityCount) {
+        bookings = bookingCount;
+        manager = new StadiumManager();
+        names = new String[facilityCount];
+        facilities = new StadiumFacility[facilityCount];
+        for (int f = 0; f < facilityCount; f++) {
+            names[f] = "Facility-" + f;
+            // Enough units for one iteration; every iteration releases what it reserved
+            manager.addFacility(names[f], operations, "Regular", false);
+            facilities[f] = manager.getFacility(names[f]);
+        }
+        firstSlot = BookingSlot.pack(BookingSlot.today() + 1, 0);
+        for (int k = 0; k < bookingCount; k++) {
+            Booking.addBooking(names[k % facilityCount], preloadedSlot(k), 1, 0);
+        }
+        nextSlot = firstSlot + (long) bookingCount / facilityCount + 1;
+    }
+
+    private long preloadedSlot(int booking) {
+        return firstSlot + booking / names.length;
+    }
+
+    private void tearDown() {
+        for (Booking booking : new ArrayList<>(Booking.bookings.all())) {
+            Booking.removeBooking(booking.getFacilityName(), booking.getSlot());
+        }
+        manager = null;
+        facilities = null;
+        dates = null;
+        times = null;
+    }
+
+    private void run(String name, int threads, Case benchmark) throws Exception {
+        if (!only.isEmpty() && !only.contains(name) && !only.contains(name.substring(name.indexOf('.') + 1))) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int opsPerIteration = Math.min(operations, benchmark.maxOperations());
+            opsPerIteration -= opsPerIteration % threads;
+            long totalNanos = 0;
+            long totalBytes = 0;
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (int iteration = 0; iteration <= iterations; iteration++) {
+                int from = iteration * opsPerIteration;
+                int to = from + opsPerIteration;
+                benchmark.prepare(from, to);
+                long gcCountBefore = gcCount();
+                long gcMillisBefore = gcMillis();
+                long[] result = timed(pool, threads, benchmark, from, to);
+                System.setOut(DISCARD);
+                try {
+                    benchmark.undo(from, to);
+                } finally {
+                    System.setOut(CONSOLE);
+                }
+                if (iteration == 0) {
+                    continue; // warm-up
+                }
+                totalNanos += result[0];
+                totalBytes += result[1];
+                gcCount += gcCount() - gcCountBefore;
+                gcMillis += gcMillis() - gcMillisBefore;
+            }
+            double ops = (double) opsPerIteration * iterations;
+            // ns/op is wall time per operation across all threads, i.e. the inverse of throughput
+            CONSOLE.printf("%-28s %10d %6d %4d %12.1f %14.0f %10.1f %5d (%4d)%n",
+                    name, bookings, names.length, threads,
+                    totalNanos / ops, ops * 1e9 / totalNanos, totalBytes / ops, gcCount, gcMillis);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Runs [from, to) split evenly over the threads; returns elapsed nanos and bytes allocated
+    private static long[] timed(ExecutorService pool, int threads, Case benchmark, int from, int to) throws Exception {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Long>> allocated = new ArrayList<>();
+        int share = (to - from) / threads;
+        for (int t = 0; t < threads; t++) {
+            int start = from + t * share;
+            int end = start + share;
+            allocated.add(pool.submit(() -> {
+                ready.countDown();
+                go.await();
+                long before = THREADS.getCurrentThreadAllocatedBytes();
+                for (int i = start; i < end; i++) {
+                    benchmark.op(i);
+                }
+                return THREADS.getCurrentThreadAllocatedBytes() - before;
+            }));
+        }
+        ready.await();
+        System.setOut(DISCARD); // several of the measured methods print a confirmation
+        long bytes = 0;
+        long begin = System.nanoTime();
+        try {
+            go.countDown();
+            for (Future<Long> future : allocated) {
+                bytes += future.get();
+            }
+        } finally {
+            System.setOut(CONSOLE);
+        }
+        return new long[]{System.nanoTime() - begin, bytes};
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+// Streaming CSV import and export of facilities and bookings (RFC 4180, read by CsvReader).
+//   facilities: type,name,capacity,seatType,seatsPerRow,hasProjector   (type = seating|conference)
+//   bookings:   facility,date,time,units,durationMinutes,id             (yyyy-MM-dd, HH:mm)
+// Command scripts (see BookingScript) use the same columns after their command word.
+// Files go through FileChannels and fixed 1 MB buffers, so memory use does not depend on the
+// file size. Rows are parsed straight from the bytes: numbers, dates and times without creating
+// any objects, and facility names decoded only when they change from the previous row.
+// Imported rows go through StadiumManager like any other change and print nothing; a bad row is
+// reported to the listener and skipped, and the import goes on with the next one.
+public final class BookingCsv {
+    public static final String FACILITY_HEADER = "type,name,capacity,seatType,seatsPerRow,hasProjector";
+    public static final String BOOKING_HEADER = "facility,date,time,units,durationMinutes,id";
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    // Told about every row that could not be imported; line is the row's first line in the file
+    public interface BadRowListener {
+        void badRow(long line, String reason);
+    }
+
+    // Row counts of one import, header and blank lines not included
+    public static final class Result {
+        private long rows;
+        private long imported;
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rows - imported;
+        }
+
+        @Override
+        public String toString() {
+            return imported + " of " + rows + " rows imported, " + getRejected() + " rejected";
+        }
+    }
+
+    private BookingCsv() {
+    }
+
+    // Writes every facility with its layout; counters are not exported, they follow from the bookings
+    public static long exportFacilities(StadiumManager manager, Path file) throws IOException {
+        long rows = 0;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (CsvWriter out = new CsvWriter(temp)) {
+            out.writeRaw(FACILITY_HEADER);
+            out.endRow();
+            for (StadiumFacility facility : manager.getFacilitiesAsList()) {
+                if (facility instanceof SeatingSection) {
+                    SeatingSection section = (SeatingSection) facility;
+                    out.writeRaw("seating,");
+                    out.writeText(section.getFacilityName());
+                    out.comma();
+                    out.writeInt(section.getCapacity());
+                    out.comma();
+                    out.writeText(section.getSeatType());
+                    out.comma();
+                    out.writeInt(section.getSeatsPerRow());
+                    out.writeRaw(",");
+                } else if (facility instanceof ConferenceRoom) {
+                    out.writeRaw("conference,");
+                    out.writeText(facility.getFacilityName());
+                    out.comma();
+                    out.writeInt(facility.getCapacity());
+                    out.writeRaw(",,,");
+                    out.writeRaw(((ConferenceRoom) facility).isHasProjector() ? "true" : "false");
+                } else {
+                    continue;
+                }
+                out.endRow();
+                rows++;
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    // Writes every booking, grouped by facility. Bookings made while the export runs may or may
+    // not be included, as with any live iteration of the booking store.
+    public static long exportBookings(StadiumManager manager, Path file) throws IOException {
+        long rows = 0;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (CsvWriter out = new CsvWriter(temp)) {
+            out.writeRaw(BOOKING_HEADER);
+            out.endRow();
+            for (StadiumFacility facility : manager.getFacilitiesAsList()) {
+                for (Booking booking : Booking.bookings.forFacility(facility.getFacilityName())) {
+                    out.writeText(booking.getFacilityName());
+                    out.comma();
+                    out.writeDate(booking.getSlot());
+                    out.comma();
+                    out.writeTime(booking.getSlot());
+                    out.comma();
+                    out.writeInt(booking.getBookedUnits());
+                    out.comma();
+                    out.writeInt(booking.getDurationMinutes());
+                    out.comma();
+                    out.writeLong(booking.getId());
+                    out.endRow();
+                    rows++;
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    // Adds the facilities in the file; a name that is already taken is a bad row
+    public static Result importFacilities(StadiumManager manager, Path file, BadRowListener listener) throws IOException {
+        return importRows(manager, file, FACILITY_HEADER, listener, BookingCsv::importFacility);
+    }
+
+    // Books every row through StadiumManager.placeBooking, so capacity, conflicts and dates are
+    // checked exactly as for interactive bookings; rows that are refused are bad rows. A row's
+    // booking keeps the ID in its id column (a CONFLICT if a live booking already has it); rows
+    // without one get a new ID.
+    public static Result importBookings(StadiumManager manager, Path file, BadRowListener listener) throws IOException {
+        return importRows(manager, file, BOOKING_HEADER, listener, BookingCsv::importBooking);
+    }
+
+    // Imports one parsed row; returns null on success, otherwise why the row was refused
+    private interface RowImporter {
+        String importRow(StadiumManager manager, CsvReader row);
+    }
+
+    private static Result importRows(StadiumManager manager, Path file, String header, BadRowListener listener,
+                                     RowImporter importer) throws IOException {
+        Result result = new Result();
+        try (CsvReader in = new CsvReader(file)) {
+            manager.deferDurability(() -> {
+                while (in.next()) {
+                    if (in.isBlank() || in.isHeader(header)) {
+                        continue;
+                    }
+                    result.rows++;
+                    String problem = in.problem();
+                    if (problem == null) {
+                        try {
+                            problem = importer.importRow(manager, in);
+                        } catch (IllegalArgumentException e) {
+                            problem = e.getMessage();
+                        }
+                    }
+                    if (problem == null) {
+                        result.imported++;
+                    } else {
+                        listener.badRow(in.line(), problem);
+                    }
+                }
+            });
+        } catch (CsvReader.ReadFailure e) {
+            throw e.getCause();
+        }
+        return result;
+    }
+
+    // Returns null if the facility was added, otherwise why not
+    private static String importFacility(StadiumManager manager, CsvReader in) {
+        return addFacility(manager, in, 0) ? null : "A facility with this name already exists.";
+    }
+
+    // Returns null if the booking was made, otherwise why not
+    private static String importBooking(StadiumManager manager, CsvReader in) {
+        BookingStatus status = placeBooking(manager, in, 0);
+        return status == BookingStatus.SUCCESS ? null : status.toString();
+    }
+
+    // Adds the facility in the row's columns from the given one on, in FACILITY_HEADER order.
+    // Returns false if the name is taken; throws IllegalArgumentException if the columns are invalid.
+    static boolean addFacility(StadiumManager manager, CsvReader in, int first) {
+        if (in.fieldCount() < first + 3) {
+            throw new IllegalArgumentException("Expected type,name,capacity[,seatType,seatsPerRow,hasProjector]");
+        }
+        String name = in.string(first + 1);
+        int capacity = in.intField(first + 2, 0);
+        if (name.isEmpty() || capacity <= 0) {
+            throw new IllegalArgumentException("A name and a positive capacity are required.");
+        }
+        if (in.fieldEquals(first, "seating")) {
+            String seatType = in.length(first + 3) > 0 ? in.string(first + 3) : "Regular";
+            int seatsPerRow = in.intField(first + 4, SeatingSection.DEFAULT_SEATS_PER_ROW);
+            if (seatsPerRow <= 0) {
+                throw new IllegalArgumentException("Invalid number of seats per row.");
+            }
+            return manager.addSeatingSection(name, capacity, seatType, seatsPerRow);
+        } else if (in.fieldEquals(first, "conference")) {
+            return manager.addFacility(name, capacity, null, in.fieldEquals(first + 5, "true"));
+        }
+        throw new IllegalArgumentException("Type must be seating or conference.");
+    }
+
+    // Books the row's columns from the given one on, in BOOKING_HEADER order, through
+    // StadiumManager.placeBooking. Throws IllegalArgumentException if the columns are invalid.
+    static BookingStatus placeBooking(StadiumManager manager, CsvReader in, int first) {
+        if (in.fieldCount() < first + 3) {
+            throw new IllegalArgumentException("Expected facility,date,time[,units,durationMinutes,id]");
+        }
+        long slot = BookingSlot.parse(in.text(first + 1), in.text(first + 2));
+        if (slot == BookingSlot.INVALID) {
+            throw new IllegalArgumentException("Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        int units = in.intField(first + 3, 1);
+        int duration = in.intField(first + 4, ConferenceRoom.DEFAULT_BOOKING_MINUTES);
+        long id = in.longField(first + 5, 0);
+        return manager.placeBooking(id, in.string(first), slot, units, duration).getStatus();
+    }
+
+    // Encodes rows into a fixed buffer and writes it to the channel whenever it fills up
+    private static final class CsvWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        // The last encoded text and its bytes, reused while consecutive rows repeat it
+        private String lastText;
+        private byte[] lastBytes;
+
+        CsvWriter(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        void comma() throws IOException {
+            put((byte) ',');
+        }
+
+        void endRow() throws IOException {
+            put((byte) '\n');
+        }
+
+        // Writes ASCII text that needs no quoting
+        void writeRaw(String ascii) throws IOException {
+            for (int i = 0; i < ascii.length(); i++) {
+                put((byte) ascii.charAt(i));
+            }
+        }
+
+        // Writes a text field, quoted if it contains a comma, a quote or a line break
+        void writeText(String text) throws IOException {
+            if (text != lastText) {
+                lastText = text;
+                lastBytes = text.getBytes(StandardCharsets.UTF_8);
+            }
+            boolean quote = false;
+            for (byte b : lastBytes) {
+                if (b == ',' || b == '"' || b == '\n' || b == '\r') {
+                    quote = true;
+                    break;
+                }
+            }
+            if (!quote) {
+                put(lastBytes, lastBytes.length);
+                return;
+            }
+            put((byte) '"');
+            for (byte b : lastBytes) {
+                if (b == '"') {
+                    put((byte) '"');
+                }
+                put(b);
+            }
+            put((byte) '"');
+        }
+
+        void writeInt(int value) throws IOException {
+            writeLong(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            if (value < 0) {
+                put((byte) '-');
+                value = -value;
+            }
+            long divisor = 1;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                put((byte) ('0' + value / divisor % 10));
+            }
+        }
+
+        void writeDate(long slot) throws IOException {
+            LocalDate date = BookingSlot.toLocalDate(slot);
+            writeDigits(date.getYear(), 4);
+            put((byte) '-');
+            writeDigits(date.getMonthValue(), 2);
+            put((byte) '-');
+            writeDigits(date.getDayOfMonth(), 2);
+        }
+
+        void writeTime(long slot) throws IOException {
+            int minute = BookingSlot.minuteOfDay(slot);
+            writeDigits(minute / 60, 2);
+            put((byte) ':');
+            writeDigits(minute % 60, 2);
+        }
+
+        private void writeDigits(int value, int width) throws IOException {
+            for (int divisor = (int) Math.pow(10, width - 1); divisor > 0; divisor /= 10) {
+                put((byte) ('0' + value / divisor % 10));
+            }
+        }
+
+        private void put(byte b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put(b);
+        }
+
+        private void put(byte[] bytes, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(buffer.remaining(), count - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
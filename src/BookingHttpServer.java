@@ -0,0 +1,459 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Headless JSON API over a StadiumManager, served by the JDK's built-in HTTP server.
+// Parameters come from the query string or a form-encoded request body:
+//   GET    /facilities                                      all facilities with their counters
+//   POST   /facilities name, capacity, type=seating|conference, [seatType=Regular], [hasProjector=false]
+//   GET    /availability?facility=&date=&time=[&duration=]  whether the slot is free
+//   GET    /bookings?facility=                              the facility's bookings
+//   GET    /bookings?id=                                    one booking by confirmation number
+//   POST   /bookings   facility, date, time, [units=1], [duration=60]
+//   PUT    /bookings   id, date, time, [units=1], [duration=60]  moves or resizes a booking
+//   DELETE /bookings?facility=&date=&time=  or  ?id=
+//   POST   /holds      facility, [units=1], [minutes=10]      holds units while the buyer pays
+//   GET    /holds?id=                                       a pending hold
+//   PUT    /holds      id, date, time, [duration=60]        confirms the hold as a booking
+//   DELETE /holds?id=                                       releases the hold early
+//   GET    /metrics                                         the plain-text metrics report
+// Each request runs on its own virtual thread; bookings on different facilities never contend,
+// and bookings waiting on the journal's fsync share it with everyone else in the batch.
+public class BookingHttpServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 1024;
+
+    private final StadiumManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private interface Handler {
+        Response handle(String method, Map<String, String> params) throws IOException;
+    }
+
+    private static final class Response {
+        private final int code;
+        private final String contentType;
+        private final String body;
+
+        Response(int code, String contentType, String body) {
+            this.code = code;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response json(int code, String body) {
+            return new Response(code, "application/json; charset=utf-8", body);
+        }
+
+        static Response error(int code, String message) {
+            return json(code, "{\"error\":" + quote(message) + "}");
+        }
+    }
+
+    public BookingHttpServer(StadiumManager manager, InetSocketAddress address) throws IOException {
+        this.manager = manager;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-booking-", 0).factory());
+        server.setExecutor(executor);
+        server.createContext("/facilities", exchange -> serve(exchange, this::facilities));
+        server.createContext("/availability", exchange -> serve(exchange, this::availability));
+        server.createContext("/bookings", exchange -> serve(exchange, this::bookings));
+        server.createContext("/holds", exchange -> serve(exchange, this::holds));
+        server.createContext("/metrics", exchange -> serve(exchange, this::metrics));
+    }
+
+    public BookingHttpServer(StadiumManager manager, int port) throws IOException {
+        this(manager, new InetSocketAddress(port));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting requests and gives running ones a moment to finish
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Response facilities(String method, Map<String, String> params) {
+        if (method.equals("POST")) {
+            return addFacility(params);
+        }
+        if (!method.equals("GET")) {
+            return Response.error(405, "Use GET or POST.");
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (StadiumFacility facility : manager.getFacilitiesAsList()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":").append(quote(facility.getFacilityName()));
+            if (facility instanceof SeatingSection) {
+                sb.append(",\"type\":\"SeatingSection\",\"seatType\":").append(quote(((SeatingSection) facility).getSeatType()));
+            } else if (facility instanceof ConferenceRoom) {
+                sb.append(",\"type\":\"ConferenceRoom\",\"hasProjector\":").append(((ConferenceRoom) facility).isHasProjector());
+            }
+            sb.append(",\"capacity\":").append(facility.getCapacity())
+                    .append(",\"booked\":").append(facility.getCurrentBookings() - facility.getHeldUnits())
+                    .append(",\"held\":").append(facility.getHeldUnits())
+                    .append(",\"available\":").append(facility.getAvailableUnits())
+                    .append('}');
+        }
+        return Response.json(200, sb.append(']').toString());
+    }
+
+    private Response addFacility(Map<String, String> params) {
+        String name = params.getOrDefault("name", "");
+        int capacity = intParam(params, "capacity", 0);
+        if (name.isEmpty() || capacity <= 0) {
+            return Response.error(400, "A name and a positive capacity are required.");
+        }
+        String type = params.getOrDefault("type", "seating");
+        boolean added;
+        if (type.equalsIgnoreCase("seating")) {
+            added = manager.addFacility(name, capacity, params.getOrDefault("seatType", "Regular"), false);
+        } else if (type.equalsIgnoreCase("conference")) {
+            added = manager.addFacility(name, capacity, null, Boolean.parseBoolean(params.get("hasProjector")));
+        } else {
+            return Response.error(400, "Type must be seating or conference.");
+        }
+        if (!added) {
+            return Response.error(409, "A facility with this name already exists.");
+        }
+        return Response.json(201, "{\"status\":\"SUCCESS\",\"name\":" + quote(name) + "}");
+    }
+
+    private Response availability(String method, Map<String, String> params) {
+        if (!method.equals("GET")) {
+            return Response.error(405, "Use GET.");
+        }
+        StadiumFacility facility = manager.getFacility(params.getOrDefault("facility", ""));
+        if (facility == null) {
+            return Response.error(404, "Facility not found.");
+        }
+        long slot = BookingSlot.parse(params.get("date"), params.get("time"));
+        if (slot == BookingSlot.INVALID) {
+            return Response.error(400, "Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        int duration = facility instanceof ConferenceRoom ? intParam(params, "duration", ConferenceRoom.DEFAULT_BOOKING_MINUTES) : 0;
+        boolean available = Booking.isAvailable(facility.getKey(), slot, duration);
+        return Response.json(200, "{\"facility\":" + quote(facility.getFacilityName()) + ",\"available\":" + available
+                + ",\"availableUnits\":" + facility.getAvailableUnits() + "}");
+    }
+
+    private Response bookings(String method, Map<String, String> params) {
+        switch (method) {
+            case "GET":
+                return listBookings(params);
+            case "POST":
+                return book(params);
+            case "PUT":
+                return amend(params);
+            case "DELETE":
+                return cancel(params);
+            default:
+                return Response.error(405, "Use GET, POST, PUT or DELETE.");
+        }
+    }
+
+    private Response listBookings(Map<String, String> params) {
+        if (params.containsKey("id")) {
+            Booking booking = manager.getBooking(Long.parseLong(params.get("id")));
+            if (booking == null) {
+                return Response.error(404, "Booking not found.");
+            }
+            StringBuilder sb = new StringBuilder();
+            appendBooking(sb, booking);
+            return Response.json(200, sb.toString());
+        }
+        StadiumFacility facility = manager.getFacility(params.getOrDefault("facility", ""));
+        if (facility == null) {
+            return Response.error(404, "Facility not found.");
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (Booking booking : Booking.bookings.forFacility(facility.getFacilityName())) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            appendBooking(sb, booking);
+        }
+        return Response.json(200, sb.append(']').toString());
+    }
+
+    private Response book(Map<String, String> params) {
+        long slot = BookingSlot.parse(params.get("date"), params.get("time"));
+        if (slot == BookingSlot.INVALID) {
+            return Response.error(400, "Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        String facilityName = params.getOrDefault("facility", "");
+        int units = intParam(params, "units", 1);
+        int duration = intParam(params, "duration", ConferenceRoom.DEFAULT_BOOKING_MINUTES);
+        BookingResult result = manager.placeBooking(facilityName, slot, units, duration);
+        BookingStatus status = result.getStatus();
+        StringBuilder sb = new StringBuilder("{\"status\":\"").append(status).append("\",\"booking\":");
+        StadiumFacility facility = manager.getFacility(facilityName);
+        Booking booking = result.getBooking();
+        if (booking != null) {
+            appendBooking(sb, booking);
+        } else {
+            appendBooking(sb, 0, facility == null ? facilityName : facility.getFacilityName(),
+                    slot, units, facility instanceof ConferenceRoom ? duration : 0, null);
+        }
+        return Response.json(httpCode(status, 201), sb.append('}').toString());
+    }
+
+    private Response amend(Map<String, String> params) {
+        String id = params.get("id");
+        if (id == null || id.isEmpty()) {
+            return Response.error(400, "A booking id is required.");
+        }
+        long slot = BookingSlot.parse(params.get("date"), params.get("time"));
+        if (slot == BookingSlot.INVALID) {
+            return Response.error(400, "Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        BookingStatus status = manager.amend(Long.parseLong(id), slot, intParam(params, "units", 1),
+                intParam(params, "duration", ConferenceRoom.DEFAULT_BOOKING_MINUTES));
+        StringBuilder sb = new StringBuilder("{\"status\":\"").append(status).append('"');
+        Booking booking = manager.getBooking(Long.parseLong(id));
+        if (booking != null) {
+            sb.append(",\"booking\":");
+            appendBooking(sb, booking);
+        }
+        return Response.json(httpCode(status, 200), sb.append('}').toString());
+    }
+
+    private Response cancel(Map<String, String> params) {
+        if (params.containsKey("id")) {
+            Booking removed = manager.cancel(Long.parseLong(params.get("id")));
+            BookingStatus status = removed != null ? BookingStatus.SUCCESS : BookingStatus.NOT_FOUND;
+            return Response.json(httpCode(status, 200), "{\"status\":\"" + status + "\"}");
+        }
+        long slot = BookingSlot.parse(params.get("date"), params.get("time"));
+        if (slot == BookingSlot.INVALID) {
+            return Response.error(400, "Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        Booking removed = manager.cancel(params.getOrDefault("facility", ""), slot);
+        BookingStatus status = removed != null ? BookingStatus.SUCCESS : BookingStatus.NOT_FOUND;
+        return Response.json(httpCode(status, 200), "{\"status\":\"" + status + "\"}");
+    }
+
+    private Response holds(String method, Map<String, String> params) {
+        switch (method) {
+            case "GET":
+                return getHold(params);
+            case "POST":
+                return hold(params);
+            case "PUT":
+                return confirmHold(params);
+            case "DELETE":
+                return releaseHold(params);
+            default:
+                return Response.error(405, "Use GET, POST, PUT or DELETE.");
+        }
+    }
+
+    private Response getHold(Map<String, String> params) {
+        SeatHold hold = manager.getHold(longParam(params, "id"));
+        if (hold == null) {
+            return Response.error(404, "Hold not found or no longer pending.");
+        }
+        return Response.json(200, holdJson(hold));
+    }
+
+    private Response hold(Map<String, String> params) {
+        StadiumFacility facility = manager.getFacility(params.getOrDefault("facility", ""));
+        if (facility == null) {
+            return Response.error(404, "Facility not found.");
+        }
+        int units = intParam(params, "units", 1);
+        int minutes = intParam(params, "minutes", StadiumManager.DEFAULT_HOLD_MINUTES);
+        if (units <= 0 || minutes <= 0) {
+            return Response.error(400, "Units and minutes must be positive.");
+        }
+        SeatHold hold = manager.hold(facility.getFacilityName(), units, minutes, TimeUnit.MINUTES);
+        if (hold == null) {
+            return Response.error(409, "Not enough capacity to hold " + units + " units.");
+        }
+        return Response.json(201, holdJson(hold));
+    }
+
+    private Response confirmHold(Map<String, String> params) {
+        long id = longParam(params, "id");
+        long slot = BookingSlot.parse(params.get("date"), params.get("time"));
+        if (slot == BookingSlot.INVALID) {
+            return Response.error(400, "Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+        }
+        BookingStatus status = manager.confirmHold(id, slot, intParam(params, "duration", ConferenceRoom.DEFAULT_BOOKING_MINUTES));
+        StringBuilder sb = new StringBuilder("{\"status\":\"").append(status).append('"');
+        Booking booking = status == BookingStatus.SUCCESS ? manager.getBooking(id) : null;
+        if (booking != null) {
+            sb.append(",\"booking\":");
+            appendBooking(sb, booking);
+        }
+        return Response.json(httpCode(status, 201), sb.append('}').toString());
+    }
+
+    private Response releaseHold(Map<String, String> params) {
+        BookingStatus status = manager.releaseHold(longParam(params, "id")) ? BookingStatus.SUCCESS : BookingStatus.NOT_FOUND;
+        return Response.json(httpCode(status, 200), "{\"status\":\"" + status + "\"}");
+    }
+
+    private static String holdJson(SeatHold hold) {
+        return "{\"id\":" + hold.getId() + ",\"facility\":" + quote(hold.getFacilityName())
+                + ",\"units\":" + hold.getUnits() + ",\"state\":\"" + hold.getState()
+                + "\",\"expiresInMillis\":" + hold.getRemainingMillis() + "}";
+    }
+
+    private Response metrics(String method, Map<String, String> params) {
+        if (!method.equals("GET")) {
+            return Response.error(405, "Use GET.");
+        }
+        return new Response(200, "text/plain; charset=utf-8", manager.getMetricsReport());
+    }
+
+    private static int httpCode(BookingStatus status, int success) {
+        switch (status) {
+            case SUCCESS:
+                return success;
+            case NOT_FOUND:
+                return 404;
+            case CONFLICT:
+            case INSUFFICIENT_CAPACITY:
+                return 409;
+            case EXPIRED:
+                return 410;
+            default:
+                return 400;
+        }
+    }
+
+    private void appendBooking(StringBuilder sb, Booking booking) {
+        appendBooking(sb, booking.getId(), booking.getFacilityName(), booking.getSlot(), booking.getBookedUnits(),
+                booking.getDurationMinutes(), manager.describeSeats(booking));
+    }
+
+    // An id of 0 (no booking was made) and null seats (none assigned) are left out
+    private static void appendBooking(StringBuilder sb, long id, String facilityName, long slot, int units, int duration,
+                                      String seats) {
+        sb.append('{');
+        if (id != 0) {
+            sb.append("\"id\":").append(id).append(',');
+        }
+        sb.append("\"facility\":").append(quote(facilityName))
+                .append(",\"date\":\"").append(BookingSlot.formatDate(slot))
+                .append("\",\"time\":\"").append(BookingSlot.formatTime(slot))
+                .append("\",\"units\":").append(units)
+                .append(",\"durationMinutes\":").append(duration);
+        if (seats != null) {
+            sb.append(",\"seats\":").append(quote(seats));
+        }
+        sb.append('}');
+    }
+
+    // Runs the handler and writes its response; malformed numbers become 400s, anything else a 500
+    private static void serve(HttpExchange exchange, Handler handler) throws IOException {
+        Response response;
+        try {
+            Map<String, String> params = new HashMap<>();
+            parseParams(exchange.getRequestURI().getRawQuery(), params);
+            try (InputStream body = exchange.getRequestBody()) {
+                parseParams(new String(body.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+            response = handler.handle(exchange.getRequestMethod(), params);
+        } catch (NumberFormatException e) {
+            response = Response.error(400, "Invalid number: " + e.getMessage());
+        } catch (RuntimeException | IOException e) {
+            response = Response.error(500, String.valueOf(e.getMessage()));
+        }
+        byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", response.contentType);
+        exchange.sendResponseHeaders(response.code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Parses name=value&name=value pairs, later occurrences winning
+    private static void parseParams(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8).trim());
+            }
+        }
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    // A required number; a missing one is reported like a malformed one
+    private static long longParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new NumberFormatException("missing " + name);
+        }
+        return Long.parseLong(value);
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Issues booking IDs (the confirmation numbers handed to customers) without contention: IDs come
+// from a fixed set of striped blocks, each claiming BLOCK_SIZE IDs at a time from a shared counter
+// and handing them out one by one, so the counter is only touched once per block. Callers pick
+// the stripe by facility key (see FacilityKeys); bookings of one facility already run under its
+// stripe lock, so a block's monitor is rarely contended and outlives any one thread, including
+// the short-lived virtual threads that serve requests. IDs are unique, positive and increasing
+// within each stripe; across stripes they follow booking order only roughly. 0 means "no ID".
+public final class BookingIds {
+    // IDs are claimed from the shared counter this many at a time
+    public static final int BLOCK_SIZE = 1024;
+    private static final int STRIPES = 64;
+
+    private static final AtomicLong nextBlockStart = new AtomicLong(1);
+    // IDs at or below this are taken, e.g. by restored bookings; blocks claimed earlier are abandoned
+    private static volatile long taken;
+    private static final Block[] blocks = new Block[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            blocks[i] = new Block();
+        }
+    }
+
+    private BookingIds() {
+    }
+
+    // An ID from the stripe of the given facility key
+    public static long next(int facilityKey) {
+        return blocks[facilityKey & (STRIPES - 1)].next();
+    }
+
+    // An ID for callers without a facility, from a stripe picked by thread
+    public static long next() {
+        return next((int) Thread.currentThread().threadId());
+    }
+
+    // Makes sure every ID issued from now on is greater than the given one
+    public static void reserveUpTo(long id) {
+        if (id <= taken) {
+            return;
+        }
+        synchronized (BookingIds.class) {
+            if (id > taken) {
+                nextBlockStart.accumulateAndGet(id + 1, Math::max);
+                taken = id;
+            }
+        }
+    }
+
+    // One stripe: the next ID of its current block and the end of the block (exclusive)
+    private static final class Block {
+        private long next;
+        private long end;
+
+        synchronized long next() {
+            if (next >= end || next <= taken) {
+                next = nextBlockStart.getAndAdd(BLOCK_SIZE);
+                end = next + BLOCK_SIZE;
+            }
+            return next++;
+        }
+    }
+}
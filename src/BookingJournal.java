@@ -0,0 +1,513 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead log of facility adds, bookings, amendments, cancellations and archive sweeps.
+// Each record is [int length][int crc32][payload], and each record type has exactly one payload
+// layout: a payload that doesn't match it exactly fails the replay instead of being guessed at.
+// Appends are queued and a single writer thread
+// writes whatever has accumulated and fsyncs once per batch (group commit), so concurrent
+// bookings share the cost of one fsync instead of paying for one each.
+// The journal is fail-stop: the first write that fails cuts the file back to its last fsynced
+// record and fails that batch, everything still queued and every later append, so no record is
+// ever written behind a torn one. Each record can carry an undo that runs when it is lost, newest
+// first and before its future completes, so the caller can take back the change it made in memory.
+public class BookingJournal implements AutoCloseable {
+    private static final byte FACILITY_ADDED = 1;
+    private static final byte BOOKED = 2;
+    private static final byte CANCELED = 3;
+    private static final byte BOOKED_BATCH = 4;
+    private static final byte ARCHIVED = 5;
+    private static final byte AMENDED = 6;
+
+    private static final byte KIND_FACILITY = 0;
+    private static final byte KIND_SEATING_SECTION = 1;
+    private static final byte KIND_CONFERENCE_ROOM = 2;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_BATCH = 4096;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final BlockingQueue<PendingRecord> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    // Logical end of the journal once everything queued so far is written
+    private long appendPosition;
+    private CompletableFuture<Void> lastAppended = CompletableFuture.completedFuture(null);
+    // The write error that stopped the journal, null while it is healthy
+    private volatile IOException failure;
+
+    // Queued by close() behind all real records, tells the writer thread to stop
+    private static final PendingRecord CLOSE_MARKER = new PendingRecord(new byte[0], null);
+
+    // Receives journal records during replay
+    public interface Listener {
+        void facilityAdded(StadiumFacility facility);
+
+        // firstSeat is Booking.NO_SEATS for bookings without assigned seats
+        void booked(long id, String facilityName, long slot, int bookedUnits, int durationMinutes, int firstSeat);
+
+        void canceled(String facilityName, long slot);
+
+        // Every booking before the cutoff slot was moved to the archive
+        void archived(long cutoffSlot);
+
+        // The booking at oldSlot was replaced by the given one, keeping its ID
+        void amended(long id, String facilityName, long oldSlot, long slot, int bookedUnits, int durationMinutes,
+                     int firstSeat);
+    }
+
+    private BookingJournal(FileChannel channel) {
+        this.channel = channel;
+        this.writer = new Thread(this::writeLoop, "booking-journal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    // Opens (or creates) the journal; call replay before appending to restore earlier state
+    public static BookingJournal open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        BookingJournal journal = new BookingJournal(channel);
+        journal.appendPosition = channel.size();
+        journal.writer.start();
+        return journal;
+    }
+
+    // Feeds every intact record to the listener, then drops any torn tail left by a crash
+    public void replay(Listener listener) throws IOException {
+        replay(listener, 0);
+    }
+
+    // Replays only the records from the given position on, e.g. those written after a snapshot
+    public synchronized void replay(Listener listener, long fromPosition) throws IOException {
+        long size = channel.size();
+        if (fromPosition > size) {
+            throw new IOException("Journal is shorter than the snapshot expects (" + size + " < " + fromPosition + " bytes).");
+        }
+        long position = fromPosition;     // start of the next record to apply
+        long readPosition = fromPosition; // next file byte to load into the buffer
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        buffer.flip();
+        CRC32 crc = new CRC32();
+        while (true) {
+            int length = buffer.remaining() >= HEADER_BYTES ? buffer.getInt(buffer.position()) : 0;
+            if (buffer.remaining() >= HEADER_BYTES && (length <= 0 || position + HEADER_BYTES + length > size)) {
+                break; // torn or corrupt record
+            }
+            if (buffer.remaining() < HEADER_BYTES + length) {
+                // Refill, growing the buffer if a single record doesn't fit
+                if (readPosition >= size) {
+                    break;
+                }
+                buffer.compact();
+                if (buffer.capacity() < HEADER_BYTES + length) {
+                    buffer.flip();
+                    buffer = ByteBuffer.allocate(HEADER_BYTES + length).put(buffer);
+                }
+                int read = channel.read(buffer, readPosition);
+                buffer.flip();
+                if (read <= 0) {
+                    break;
+                }
+                readPosition += read;
+                continue;
+            }
+            buffer.getInt();
+            int checksum = buffer.getInt();
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(payload, listener);
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            System.out.println("Journal: discarding " + (size - position) + " bytes of incomplete records.");
+            channel.truncate(position);
+        }
+        channel.position(position);
+        appendPosition = position;
+    }
+
+    // Position the journal will have reached once everything appended so far is written
+    public synchronized long appendPosition() {
+        return appendPosition;
+    }
+
+    // Completes once everything appended so far has been fsynced
+    public synchronized CompletableFuture<Void> flushed() {
+        return failure == null ? lastAppended : stopped();
+    }
+
+    // True once a write has failed; nothing can be appended after that
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    // ifLost (may be null) undoes the change if its record can't be made durable
+    public CompletableFuture<Void> logFacilityAdded(StadiumFacility facility, Runnable ifLost) {
+        return append(encode(out -> {
+            out.writeByte(FACILITY_ADDED);
+            if (facility instanceof SeatingSection) {
+                out.writeByte(KIND_SEATING_SECTION);
+            } else if (facility instanceof ConferenceRoom) {
+                out.writeByte(KIND_CONFERENCE_ROOM);
+            } else {
+                out.writeByte(KIND_FACILITY);
+            }
+            out.writeUTF(facility.getFacilityName());
+            out.writeInt(facility.getCapacity());
+            if (facility instanceof SeatingSection) {
+                String seatType = ((SeatingSection) facility).getSeatType();
+                out.writeUTF(seatType == null ? "" : seatType);
+                out.writeInt(((SeatingSection) facility).getSeatsPerRow());
+            } else if (facility instanceof ConferenceRoom) {
+                out.writeBoolean(((ConferenceRoom) facility).isHasProjector());
+            }
+        }), ifLost);
+    }
+
+    public CompletableFuture<Void> logBooking(Booking booking, Runnable ifLost) {
+        return append(encode(out -> {
+            out.writeByte(BOOKED);
+            writeBooking(out, booking);
+        }), ifLost);
+    }
+
+    // Logs a whole batch as one record, so after a crash either all of it is replayed or none
+    public CompletableFuture<Void> logBookings(List<Booking> bookings, Runnable ifLost) {
+        return append(encode(out -> {
+            out.writeByte(BOOKED_BATCH);
+            out.writeInt(bookings.size());
+            for (Booking booking : bookings) {
+                writeBooking(out, booking);
+            }
+        }), ifLost);
+    }
+
+    // A booking in BOOKED and BOOKED_BATCH records, read back by readBooking
+    private static void writeBooking(DataOutputStream out, Booking booking) throws IOException {
+        out.writeLong(booking.getId());
+        out.writeUTF(booking.getFacilityName());
+        out.writeLong(booking.getSlot());
+        out.writeInt(booking.getBookedUnits());
+        out.writeInt(booking.getDurationMinutes());
+        out.writeInt(booking.getFirstSeat());
+    }
+
+    public CompletableFuture<Void> logAmendment(long oldSlot, Booking amended, Runnable ifLost) {
+        return append(encode(out -> {
+            out.writeByte(AMENDED);
+            out.writeLong(amended.getId());
+            out.writeUTF(amended.getFacilityName());
+            out.writeLong(oldSlot);
+            out.writeLong(amended.getSlot());
+            out.writeInt(amended.getBookedUnits());
+            out.writeInt(amended.getDurationMinutes());
+            out.writeInt(amended.getFirstSeat());
+        }), ifLost);
+    }
+
+    public CompletableFuture<Void> logCancellation(String facilityName, long slot, Runnable ifLost) {
+        return append(encode(out -> {
+            out.writeByte(CANCELED);
+            out.writeUTF(facilityName);
+            out.writeLong(slot);
+        }), ifLost);
+    }
+
+    // Logs that every booking before the cutoff was moved to the archive. Nothing to undo if it is
+    // lost: the bookings are safe in the archive and replay drops them again.
+    public CompletableFuture<Void> logArchived(long cutoffSlot) {
+        return append(encode(out -> {
+            out.writeByte(ARCHIVED);
+            out.writeLong(cutoffSlot);
+        }), null);
+    }
+
+    // Blocks until the record behind the future has been fsynced
+    public static void awaitDurable(CompletableFuture<Void> durable) {
+        try {
+            durable.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException("Could not write to the booking journal.", (IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    // Writes and fsyncs everything appended so far, then closes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.add(CLOSE_MARKER);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // Queued under the lock so queue order always matches the positions handed out. Once the
+    // journal has failed the record is lost straight away: its undo runs here, outside the lock.
+    private CompletableFuture<Void> append(byte[] payload, Runnable ifLost) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Booking journal is closed.");
+            }
+            if (failure == null) {
+                PendingRecord record = new PendingRecord(payload, ifLost);
+                appendPosition += HEADER_BYTES + payload.length;
+                lastAppended = record.durable;
+                pending.add(record);
+                return record.durable;
+            }
+        }
+        undo(ifLost);
+        return stopped();
+    }
+
+    private CompletableFuture<Void> stopped() {
+        return CompletableFuture.failedFuture(new IOException("Booking journal stopped after a write failure.", failure));
+    }
+
+    // Never interrupted on purpose: an interrupt during channel I/O would close the file
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            running = !batch.remove(CLOSE_MARKER);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            long durableEnd = -1;
+            try {
+                durableEnd = channel.position();
+                writeBatch(batch);
+                for (PendingRecord record : batch) {
+                    record.durable.complete(null);
+                }
+            } catch (IOException e) {
+                running &= fail(batch, e, durableEnd);
+            }
+            batch.clear();
+        }
+        // Anything that slipped in while closing can no longer be made durable
+        IOException closedException = new IOException("Booking journal is closed.");
+        for (PendingRecord record; (record = pending.poll()) != null; ) {
+            record.durable.completeExceptionally(closedException);
+        }
+    }
+
+    // Stops the journal: no append is queued after this, so the failed batch plus whatever was
+    // still queued is everything that will never be written. Returns false if close() was queued.
+    private boolean fail(List<PendingRecord> batch, IOException e, long durableEnd) {
+        synchronized (this) {
+            failure = e;
+            pending.drainTo(batch);
+        }
+        boolean closing = batch.remove(CLOSE_MARKER);
+        System.out.println("Journal: write failed, no further changes will be accepted: " + e);
+        if (durableEnd >= 0) {
+            try {
+                // Cut off the torn part, so a replay doesn't stop there with records missing
+                channel.truncate(durableEnd);
+                channel.position(durableEnd);
+            } catch (IOException ignored) {
+                // Replay drops the torn tail anyway, and nothing is written after it
+            }
+        }
+        // Newest first, and all before any caller hears of the failure
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            undo(batch.get(i).ifLost);
+        }
+        for (PendingRecord record : batch) {
+            record.durable.completeExceptionally(e);
+        }
+        return !closing;
+    }
+
+    private static void undo(Runnable ifLost) {
+        if (ifLost == null) {
+            return;
+        }
+        try {
+            ifLost.run();
+        } catch (RuntimeException e) {
+            // The remaining undos must still run
+            System.out.println("Journal: could not undo a lost change: " + e.getMessage());
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < buffers.length; i++) {
+            byte[] payload = batch.get(i).payload;
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            buffers[i] = buffer;
+        }
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        channel.force(false); // one fsync for the whole batch
+    }
+
+    // Throws if the payload is shorter or longer than its record type's layout
+    private static void apply(byte[] payload, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case FACILITY_ADDED: {
+                byte kind = in.readByte();
+                String name = in.readUTF();
+                int capacity = in.readInt();
+                StadiumFacility facility;
+                if (kind == KIND_SEATING_SECTION) {
+                    String seatType = in.readUTF();
+                    facility = new SeatingSection(name, capacity, seatType, in.readInt());
+                } else if (kind == KIND_CONFERENCE_ROOM) {
+                    facility = new ConferenceRoom(name, capacity, in.readBoolean());
+                } else {
+                    facility = new StadiumFacility(name, capacity);
+                }
+                expectEnd(in, type);
+                listener.facilityAdded(facility);
+                break;
+            }
+            case BOOKED: {
+                long id = in.readLong();
+                String facilityName = in.readUTF();
+                long slot = in.readLong();
+                int bookedUnits = in.readInt();
+                int durationMinutes = in.readInt();
+                int firstSeat = in.readInt();
+                expectEnd(in, type);
+                listener.booked(id, facilityName, slot, bookedUnits, durationMinutes, firstSeat);
+                break;
+            }
+            case BOOKED_BATCH: {
+                // Read in full before any of it is applied, so a damaged batch applies nothing
+                int count = in.readInt();
+                if (count < 0 || count > payload.length) {
+                    throw new IOException("Journal batch record claims " + count + " bookings.");
+                }
+                long[] ids = new long[count];
+                String[] facilityNames = new String[count];
+                long[] slots = new long[count];
+                int[] bookedUnits = new int[count];
+                int[] durations = new int[count];
+                int[] firstSeats = new int[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = in.readLong();
+                    facilityNames[i] = in.readUTF();
+                    slots[i] = in.readLong();
+                    bookedUnits[i] = in.readInt();
+                    durations[i] = in.readInt();
+                    firstSeats[i] = in.readInt();
+                }
+                expectEnd(in, type);
+                for (int i = 0; i < count; i++) {
+                    listener.booked(ids[i], facilityNames[i], slots[i], bookedUnits[i], durations[i], firstSeats[i]);
+                }
+                break;
+            }
+            case CANCELED: {
+                String facilityName = in.readUTF();
+                long slot = in.readLong();
+                expectEnd(in, type);
+                listener.canceled(facilityName, slot);
+                break;
+            }
+            case ARCHIVED: {
+                long cutoffSlot = in.readLong();
+                expectEnd(in, type);
+                listener.archived(cutoffSlot);
+                break;
+            }
+            case AMENDED: {
+                long id = in.readLong();
+                String facilityName = in.readUTF();
+                long oldSlot = in.readLong();
+                long slot = in.readLong();
+                int bookedUnits = in.readInt();
+                int durationMinutes = in.readInt();
+                int firstSeat = in.readInt();
+                expectEnd(in, type);
+                listener.amended(id, facilityName, oldSlot, slot, bookedUnits, durationMinutes, firstSeat);
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // A record that passed its checksum but has bytes left over was written in another layout
+    private static void expectEnd(DataInputStream in, byte type) throws IOException {
+        if (in.available() > 0) {
+            throw new IOException("Journal record of type " + type + " has " + in.available() + " unexpected trailing bytes.");
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class PendingRecord {
+        private final byte[] payload;
+        private final Runnable ifLost;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingRecord(byte[] payload, Runnable ifLost) {
+            this.payload = payload;
+            this.ifLost = ifLost;
+        }
+    }
+}
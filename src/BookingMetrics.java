@@ -0,0 +1,89 @@
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histograms and outcome counters for the booking operations, plus per-facility gauges
+// read from the facilities' running totals when a report is formatted. Recording costs two
+// System.nanoTime() calls and a few uncontended atomic adds.
+public class BookingMetrics {
+    public enum Operation {
+        BOOK("makeBooking"),
+        BATCH_BOOK("bookBatch"),
+        CANCEL("cancelBooking"),
+        AMEND("amendBooking"),
+        HOLD("holdUnits"),
+        CONFIRM_HOLD("confirmHold"),
+        RELEASE_HOLD("releaseHold"),
+        AVAILABILITY("isAvailable"),
+        ADD_FACILITY("addFacility");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    // Indexed by Operation and BookingStatus ordinals, so recording needs no map lookups
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[][] outcomes = new LongAdder[Operation.values().length][BookingStatus.values().length];
+    private final long startedNanos = System.nanoTime();
+
+    public BookingMetrics() {
+        for (int op = 0; op < latencies.length; op++) {
+            latencies[op] = new LatencyHistogram();
+            for (int status = 0; status < outcomes[op].length; status++) {
+                outcomes[op][status] = new LongAdder();
+            }
+        }
+    }
+
+    // Records one operation that started at startNanos (from System.nanoTime()) and ended now
+    public void record(Operation operation, BookingStatus outcome, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        outcomes[operation.ordinal()][outcome.ordinal()].increment();
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public long getCount(Operation operation, BookingStatus outcome) {
+        return outcomes[operation.ordinal()][outcome.ordinal()].sum();
+    }
+
+    // Plain-text report of every operation that has run, followed by the facilities' gauges
+    public String format(List<StadiumFacility> facilities) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Uptime: %.0f s%n", (System.nanoTime() - startedNanos) / 1e9));
+        sb.append(String.format("%-14s %9s %9s %9s %9s %9s %9s  %s%n",
+                "Operation", "Count", "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us", "Outcomes"));
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            StringBuilder outcomeText = new StringBuilder();
+            LongAdder[] counters = outcomes[operation.ordinal()];
+            for (BookingStatus status : BookingStatus.values()) {
+                long n = counters[status.ordinal()].sum();
+                if (n > 0) {
+                    outcomeText.append(outcomeText.length() == 0 ? "" : ", ").append(status).append('=').append(n);
+                }
+            }
+            sb.append(String.format("%-14s %9d %9.1f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                    operation.label, count, histogram.getMean() / 1e3,
+                    histogram.getPercentile(0.5) / 1e3, histogram.getPercentile(0.99) / 1e3,
+                    histogram.getPercentile(0.999) / 1e3, histogram.getMax() / 1e3, outcomeText));
+        }
+        sb.append(String.format("%-24s %10s %10s %10s %10s %10s%n", "Facility", "Capacity", "Booked", "Held", "Available", "Bookings"));
+        for (StadiumFacility facility : facilities) {
+            // Read one after another, so a hold settled in between can skew one line of the report
+            int held = facility.getHeldUnits();
+            sb.append(String.format("%-24s %10d %10d %10d %10d %10d%n", facility.getFacilityName(), facility.getCapacity(),
+                    facility.getCurrentBookings() - held, held, facility.getAvailableUnits(),
+                    Booking.bookings.countForFacility(facility.getFacilityName())));
+        }
+        return sb.toString();
+    }
+}
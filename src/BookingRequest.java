@@ -0,0 +1,40 @@
+// One item of a batch booking: units of a facility at a slot (see BookingSlot), and for
+// conference rooms the meeting length in minutes
+public class BookingRequest {
+    private final String facilityName;
+    private final long slot;
+    private final int units;
+    private final int durationMinutes;
+
+    public BookingRequest(String facilityName, long slot, int units) {
+        this(facilityName, slot, units, ConferenceRoom.DEFAULT_BOOKING_MINUTES);
+    }
+
+    public BookingRequest(String facilityName, long slot, int units, int durationMinutes) {
+        this.facilityName = facilityName;
+        this.slot = slot;
+        this.units = units;
+        this.durationMinutes = durationMinutes;
+    }
+
+    public String getFacilityName() {
+        return facilityName;
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public int getUnits() {
+        return units;
+    }
+
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    @Override
+    public String toString() {
+        return facilityName + " - " + BookingSlot.formatDate(slot) + " - " + BookingSlot.formatTime(slot) + " x" + units;
+    }
+}
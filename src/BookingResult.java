@@ -0,0 +1,28 @@
+// Outcome of StadiumManager.placeBooking: the status and, when it is SUCCESS, the booking that was
+// made, so callers get its confirmation number without looking the slot up again
+public class BookingResult {
+    private final BookingStatus status;
+    private final Booking booking;
+
+    private BookingResult(BookingStatus status, Booking booking) {
+        this.status = status;
+        this.booking = booking;
+    }
+
+    public static BookingResult success(Booking booking) {
+        return new BookingResult(BookingStatus.SUCCESS, booking);
+    }
+
+    public static BookingResult failure(BookingStatus status) {
+        return new BookingResult(status, null);
+    }
+
+    public BookingStatus getStatus() {
+        return status;
+    }
+
+    // The booking made, or null if the status is not SUCCESS
+    public Booking getBooking() {
+        return booking;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.ReadableByteChannel;
+
+// Runs a script of commands against a StadiumManager without prompts. A script is CSV, read by
+// the same CsvReader as the imports: one command per row, the command word followed by the
+// columns of the matching CSV export, so quoted names with commas work the same way in both
+// (blank rows and rows starting with # are skipped):
+//   add-facility,type,name,capacity[,seatType,seatsPerRow,hasProjector]   (BookingCsv.FACILITY_HEADER)
+//   book,facility,date,time[,units,durationMinutes,id]                     (BookingCsv.BOOKING_HEADER)
+//   cancel,facility,date,time
+// Commands run in file order on the calling thread. Each is journaled as usual, but the script
+// only waits for the disk once at the end (see StadiumManager.deferDurability). Only failed
+// commands are reported, one line each, followed by a summary.
+public class BookingScript {
+    private final StadiumManager manager;
+    private final PrintWriter out;
+
+    private long lineNumber;
+    private long commands;
+    private long malformed;
+    private long facilitiesAdded;
+    private long facilitiesRejected;
+    private long canceled;
+    private long cancelsNotFound;
+    private final long[] bookingOutcomes = new long[BookingStatus.values().length];
+
+    public BookingScript(StadiumManager manager, PrintWriter out) {
+        this.manager = manager;
+        this.out = out;
+    }
+
+    // Runs every command in the channel, then prints the summary; closes the channel
+    public void run(ReadableByteChannel script) throws IOException {
+        long start = System.nanoTime();
+        try (CsvReader in = new CsvReader(script)) {
+            manager.deferDurability(() -> {
+                while (in.next()) {
+                    lineNumber = in.line();
+                    execute(in);
+                }
+            });
+        } catch (CsvReader.ReadFailure e) {
+            throw e.getCause();
+        }
+        printSummary(System.nanoTime() - start);
+        out.flush();
+    }
+
+    private void execute(CsvReader in) {
+        if (in.isBlank() || (in.length(0) > 0 && in.text(0).charAt(0) == '#')) {
+            return;
+        }
+        commands++;
+        String problem = in.problem();
+        if (problem != null) {
+            reject(problem);
+            return;
+        }
+        try {
+            if (in.fieldEquals(0, "add-facility")) {
+                addFacility(in);
+            } else if (in.fieldEquals(0, "book")) {
+                book(in);
+            } else if (in.fieldEquals(0, "cancel")) {
+                cancel(in);
+            } else {
+                reject("Unknown command " + in.text(0));
+            }
+        } catch (IllegalArgumentException e) {
+            reject(e.getMessage());
+        }
+    }
+
+    private void addFacility(CsvReader in) {
+        if (BookingCsv.addFacility(manager, in, 1)) {
+            facilitiesAdded++;
+        } else {
+            facilitiesRejected++;
+            fail("A facility with this name already exists.");
+        }
+    }
+
+    private void book(CsvReader in) {
+        BookingStatus status = BookingCsv.placeBooking(manager, in, 1);
+        bookingOutcomes[status.ordinal()]++;
+        if (status != BookingStatus.SUCCESS) {
+            fail(status.toString());
+        }
+    }
+
+    private void cancel(CsvReader in) {
+        if (in.fieldCount() < 4) {
+            reject("Expected cancel,facility,date,time");
+            return;
+        }
+        long slot = BookingSlot.parse(in.text(2), in.text(3));
+        if (slot == BookingSlot.INVALID) {
+            reject("Invalid date or time format. Use yyyy-MM-dd and HH:mm.");
+            return;
+        }
+        if (manager.cancel(in.string(1), slot) != null) {
+            canceled++;
+        } else {
+            cancelsNotFound++;
+            fail("Booking not found.");
+        }
+    }
+
+    // A line that could not be understood at all
+    private void reject(String message) {
+        malformed++;
+        fail(message);
+    }
+
+    private void fail(String message) {
+        out.append("Line ").append(Long.toString(lineNumber)).append(": ").append(message).append('\n');
+    }
+
+    private void printSummary(long elapsedNanos) {
+        out.printf("Ran %d commands in %.2f s (%.0f commands/s)%n", commands, elapsedNanos / 1e9,
+                elapsedNanos == 0 ? 0 : commands * 1e9 / elapsedNanos);
+        out.printf("  Facilities added: %d, already existing: %d%n", facilitiesAdded, facilitiesRejected);
+        StringBuilder bookings = new StringBuilder();
+        for (BookingStatus status : BookingStatus.values()) {
+            long n = bookingOutcomes[status.ordinal()];
+            if (n > 0) {
+                bookings.append(bookings.length() == 0 ? "" : ", ").append(status).append('=').append(n);
+            }
+        }
+        out.println("  Bookings: " + (bookings.length() == 0 ? "none" : bookings));
+        out.printf("  Cancellations: %d, not found: %d%n", canceled, cancelsNotFound);
+        if (malformed > 0) {
+            out.printf("  Malformed lines: %d%n", malformed);
+        }
+    }
+}
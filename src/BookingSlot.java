@@ -0,0 +1,155 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+// Hand-written parsing of yyyy-MM-dd / HH:mm input, packed into one long slot key
+// (epoch-day * 1440 + minute-of-day). Parsing allocates nothing, so it is safe on hot booking paths.
+public final class BookingSlot {
+    public static final long INVALID = Long.MIN_VALUE;
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final long DAYS_0000_TO_1970 = 719528L;
+
+    // Cached start of the next day, so today() only touches the calendar once per day
+    private static volatile long todayEpochDay;
+    private static volatile long nextMidnightMillis;
+
+    private BookingSlot() {
+    }
+
+    // Parses yyyy-MM-dd into an epoch day, or returns INVALID for a malformed or non-existent date
+    public static long parseEpochDay(CharSequence text) {
+        if (text == null || text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    // Parses H:mm or HH:mm (00:00 - 23:59) into a minute of the day, or returns -1 if invalid
+    public static int parseMinuteOfDay(CharSequence text) {
+        if (text == null) {
+            return -1;
+        }
+        int length = text.length();
+        if (length != 4 && length != 5) {
+            return -1;
+        }
+        int colon = length - 3;
+        if (text.charAt(colon) != ':') {
+            return -1;
+        }
+        int hour = digits(text, 0, colon);
+        int minute = digits(text, colon + 1, length);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return -1;
+        }
+        return hour * 60 + minute;
+    }
+
+    // Parses both parts into a slot key, or returns INVALID if either part is invalid
+    public static long parse(CharSequence date, CharSequence time) {
+        long epochDay = parseEpochDay(date);
+        int minute = parseMinuteOfDay(time);
+        if (epochDay == INVALID || minute < 0) {
+            return INVALID;
+        }
+        return pack(epochDay, minute);
+    }
+
+    public static long pack(long epochDay, int minuteOfDay) {
+        return epochDay * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    public static long pack(LocalDate date, String time) {
+        int minute = parseMinuteOfDay(time);
+        if (minute < 0) {
+            throw new IllegalArgumentException("Invalid time format. Use HH:mm.");
+        }
+        return pack(date.toEpochDay(), minute);
+    }
+
+    public static long epochDay(long slot) {
+        return Math.floorDiv(slot, MINUTES_PER_DAY);
+    }
+
+    public static int minuteOfDay(long slot) {
+        return Math.floorMod(slot, MINUTES_PER_DAY);
+    }
+
+    public static LocalDate toLocalDate(long slot) {
+        return LocalDate.ofEpochDay(epochDay(slot));
+    }
+
+    public static String formatDate(long slot) {
+        return toLocalDate(slot).toString();
+    }
+
+    public static String formatTime(long slot) {
+        int minute = minuteOfDay(slot);
+        int hour = minute / 60;
+        minute %= 60;
+        return new String(new char[]{
+                (char) ('0' + hour / 10), (char) ('0' + hour % 10), ':',
+                (char) ('0' + minute / 10), (char) ('0' + minute % 10)});
+    }
+
+    // Today's epoch day in the system time zone
+    public static long today() {
+        if (System.currentTimeMillis() >= nextMidnightMillis) {
+            ZonedDateTime now = ZonedDateTime.now(ZoneId.systemDefault());
+            todayEpochDay = now.toLocalDate().toEpochDay();
+            nextMidnightMillis = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone()).toInstant().toEpochMilli();
+        }
+        return todayEpochDay;
+    }
+
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Same arithmetic as LocalDate.toEpochDay, for years 0000-9999
+    private static long toEpochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Compact binary checkpoint of all facilities and bookings. Bookings refer to their facility by
+// index, so each one is a fixed 32 bytes. The file is loaded through a MappedByteBuffer, and only
+// journal records written after journalPosition need to be replayed on top of it.
+public class BookingSnapshot {
+    private static final int MAGIC = 0x53544442; // "STDB"
+    // The one layout this class reads and writes; a snapshot with any other version is rejected
+    private static final int VERSION = 4;
+    // Magic, version, journal position and facility count
+    private static final int HEADER_BYTES = 20;
+
+    private static final byte KIND_FACILITY = 0;
+    private static final byte KIND_SEATING_SECTION = 1;
+    private static final byte KIND_CONFERENCE_ROOM = 2;
+
+    private final List<StadiumFacility> facilities;
+    private final int bookingCount;
+    private final int[] facilityIndexes;
+    private final long[] slots;
+    private final int[] bookedUnits;
+    private final int[] durations;
+    private final long[] ids;
+    private final int[] firstSeats;
+    private final long journalPosition;
+
+    // Bookings are passed as parallel arrays, captured while all facility locks were held
+    public BookingSnapshot(List<StadiumFacility> facilities, int bookingCount, int[] facilityIndexes,
+                           long[] slots, int[] bookedUnits, int[] durations, long[] ids, int[] firstSeats,
+                           long journalPosition) {
+        this.facilities = facilities;
+        this.bookingCount = bookingCount;
+        this.facilityIndexes = facilityIndexes;
+        this.slots = slots;
+        this.bookedUnits = bookedUnits;
+        this.durations = durations;
+        this.ids = ids;
+        this.firstSeats = firstSeats;
+        this.journalPosition = journalPosition;
+    }
+
+    public int getBookingCount() {
+        return bookingCount;
+    }
+
+    // Writes to a temporary file and renames it, so a crash never leaves a half-written snapshot
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalPosition);
+            out.writeInt(facilities.size());
+            for (StadiumFacility facility : facilities) {
+                if (facility instanceof SeatingSection) {
+                    out.writeByte(KIND_SEATING_SECTION);
+                } else if (facility instanceof ConferenceRoom) {
+                    out.writeByte(KIND_CONFERENCE_ROOM);
+                } else {
+                    out.writeByte(KIND_FACILITY);
+                }
+                writeString(out, facility.getFacilityName());
+                out.writeInt(facility.getCapacity());
+                if (facility instanceof SeatingSection) {
+                    writeString(out, ((SeatingSection) facility).getSeatType());
+                    out.writeInt(((SeatingSection) facility).getSeatsPerRow());
+                } else if (facility instanceof ConferenceRoom) {
+                    out.writeBoolean(((ConferenceRoom) facility).isHasProjector());
+                }
+            }
+            out.writeInt(bookingCount);
+            for (int i = 0; i < bookingCount; i++) {
+                out.writeInt(facilityIndexes[i]);
+                out.writeLong(slots[i]);
+                out.writeInt(bookedUnits[i]);
+                out.writeInt(durations[i]);
+                out.writeLong(ids[i]);
+                out.writeInt(firstSeats[i]);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Feeds the snapshot to the listener and returns the journal position it was taken at,
+    // or 0 if there is no snapshot yet
+    public static long load(Path file, BookingJournal.Listener listener) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Corrupt snapshot, only " + channel.size() + " bytes: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a stadium snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            return load(buffer, listener);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // A count or length pointing past the end of the file
+            throw new IOException("Corrupt snapshot, truncated or damaged: " + file, e);
+        }
+    }
+
+    private static long load(MappedByteBuffer buffer, BookingJournal.Listener listener) throws IOException {
+        long journalPosition = buffer.getLong();
+        StadiumFacility[] facilities = new StadiumFacility[buffer.getInt()];
+        for (int i = 0; i < facilities.length; i++) {
+            byte kind = buffer.get();
+            String name = readString(buffer);
+            int capacity = buffer.getInt();
+            if (kind == KIND_SEATING_SECTION) {
+                String seatType = readString(buffer);
+                facilities[i] = new SeatingSection(name, capacity, seatType, buffer.getInt());
+            } else if (kind == KIND_CONFERENCE_ROOM) {
+                facilities[i] = new ConferenceRoom(name, capacity, buffer.get() != 0);
+            } else {
+                facilities[i] = new StadiumFacility(name, capacity);
+            }
+            listener.facilityAdded(facilities[i]);
+        }
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            String facilityName = facilities[buffer.getInt()].getFacilityName();
+            long slot = buffer.getLong();
+            int bookedUnits = buffer.getInt();
+            int durationMinutes = buffer.getInt();
+            long id = buffer.getLong();
+            int firstSeat = buffer.getInt();
+            listener.booked(id, facilityName, slot, bookedUnits, durationMinutes, firstSeat);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Corrupt snapshot, " + buffer.remaining() + " bytes after the last booking.");
+        }
+        return journalPosition;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,11 @@
+// Outcome of a booking operation
+public enum BookingStatus {
+    SUCCESS,
+    CONFLICT,               // the slot or time interval is already booked
+    INSUFFICIENT_CAPACITY,  // not enough free units on the facility
+    NOT_FOUND,              // no such facility or booking
+    PAST_DATE,              // the date lies before today
+    INVALID_REQUEST,        // non-positive units or an out-of-range duration
+    ROLLED_BACK,            // valid on its own, but undone because another item of its batch failed
+    EXPIRED                 // the seat hold ran out before it was confirmed
+}
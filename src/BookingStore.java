@@ -0,0 +1,631 @@
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+// Storage for bookings, keyed by facility (see FacilityKeys) and slot, where the slot packs date
+// and time (see BookingSlot). Each facility has its own table in (date, time) order, so a lookup
+// is a couple of binary searches over primitive slots with nothing allocated, and range queries
+// cost O(log n + k). Queries across all facilities merge the per-facility ranges, which keeps
+// bookings on different facilities from contending on one shared index. Both indexes hold
+// primitive keys next to plain booking references, about 45 bytes a booking on top of the
+// booking itself. Safe for concurrent use; compound check-then-act sequences are serialized per
+// facility by StadiumManager's FacilityLocks.
+public class BookingStore {
+    // Booking ID -> booking, split into independently locked segments
+    private static final int ID_SEGMENTS = 64;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final LongMap<Booking>[] bookingsById = new LongMap[ID_SEGMENTS];
+    // Facility key -> that facility's bookings by slot
+    private volatile FacilityBookings[] bookingsByFacility = new FacilityBookings[0];
+
+    public BookingStore() {
+        for (int i = 0; i < ID_SEGMENTS; i++) {
+            bookingsById[i] = new LongMap<>();
+        }
+    }
+
+    // Facility names are matched case-insensitively everywhere in the system
+    public static String normalize(String facilityName) {
+        return facilityName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Returns true if a booking exists for the facility at the given date and time
+    public boolean contains(String facilityName, long slot) {
+        return contains(FacilityKeys.find(facilityName), slot);
+    }
+
+    public boolean contains(int facility, long slot) {
+        return get(facility, slot) != null;
+    }
+
+    public Booking get(String facilityName, long slot) {
+        return get(FacilityKeys.find(facilityName), slot);
+    }
+
+    public Booking get(int facility, long slot) {
+        FacilityBookings table = table(facility);
+        return table == null ? null : table.get(slot);
+    }
+
+    // The booking with the given confirmation number, or null
+    public Booking get(long id) {
+        LongMap<Booking> segment = idSegment(id);
+        synchronized (segment) {
+            return segment.get(id);
+        }
+    }
+
+    // Adds the booking, returns false if the slot or the booking's ID is already taken
+    public boolean add(Booking booking) {
+        FacilityBookings table = tableFor(booking.getFacilityKey());
+        // IDs are claimed first: they are unique across facilities, whose stripe locks differ
+        if (booking.getId() != 0 && !claimId(booking)) {
+            return false;
+        }
+        if (!table.add(booking)) {
+            releaseId(booking);
+            return false;
+        }
+        return true;
+    }
+
+    // Removes and returns the booking for the slot, or null if there is none
+    public Booking remove(String facilityName, long slot) {
+        return remove(FacilityKeys.find(facilityName), slot);
+    }
+
+    public Booking remove(int facility, long slot) {
+        FacilityBookings table = table(facility);
+        Booking removed = table == null ? null : table.remove(slot);
+        if (removed != null) {
+            releaseId(removed);
+        }
+        return removed;
+    }
+
+    // Number of bookings held by a facility, without scanning other facilities
+    public int countForFacility(String facilityName) {
+        return countForFacility(FacilityKeys.find(facilityName));
+    }
+
+    public int countForFacility(int facility) {
+        FacilityBookings table = table(facility);
+        return table == null ? 0 : table.size();
+    }
+
+    // The facility's bookings in (date, time) order
+    public Collection<Booking> forFacility(String facilityName) {
+        return between(facilityName, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public Collection<Booking> forFacility(int facility) {
+        return between(facility, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Bookings of all facilities with fromSlot <= slot < toSlot, in (date, time) order, then by
+    // facility. The result is a live view; nothing is copied, and iterating it costs
+    // O(f log n + k log f) for f facilities.
+    public Collection<Booking> between(long fromSlot, long toSlot) {
+        if (fromSlot >= toSlot) {
+            return Collections.emptyList();
+        }
+        return new MergedRange(fromSlot, toSlot);
+    }
+
+    // The facility's bookings with fromSlot <= slot < toSlot, in (date, time) order, as a live view
+    public Collection<Booking> between(String facilityName, long fromSlot, long toSlot) {
+        return between(FacilityKeys.find(facilityName), fromSlot, toSlot);
+    }
+
+    public Collection<Booking> between(int facility, long fromSlot, long toSlot) {
+        FacilityBookings table = table(facility);
+        if (table == null || fromSlot >= toSlot) {
+            return Collections.emptyList();
+        }
+        return new FacilityRange(table, fromSlot, toSlot);
+    }
+
+    // The facility's latest booking starting at or before the slot, or null
+    public Booking floor(String facilityName, long slot) {
+        return floor(FacilityKeys.find(facilityName), slot);
+    }
+
+    public Booking floor(int facility, long slot) {
+        FacilityBookings table = table(facility);
+        return table == null ? null : table.floor(slot);
+    }
+
+    // The facility's bookings starting at or after the slot, in (date, time) order, as a live view
+    public Collection<Booking> from(String facilityName, long slot) {
+        return between(facilityName, slot, Long.MAX_VALUE);
+    }
+
+    public Collection<Booking> from(int facility, long slot) {
+        return between(facility, slot, Long.MAX_VALUE);
+    }
+
+    // Every booking in (date, time) order, as a live view
+    public Collection<Booking> inTimeOrder() {
+        return new MergedRange(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Every booking, one facility after another, as a live view
+    public Collection<Booking> all() {
+        return new AbstractCollection<Booking>() {
+            @Override
+            public Iterator<Booking> iterator() {
+                FacilityBookings[] tables = bookingsByFacility;
+                return new Iterator<Booking>() {
+                    private int next;
+                    private Iterator<Booking> current = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!current.hasNext() && next < tables.length) {
+                            FacilityBookings table = tables[next++];
+                            if (table != null) {
+                                current = new Range(table, Long.MIN_VALUE, Long.MAX_VALUE);
+                            }
+                        }
+                        return current.hasNext();
+                    }
+
+                    @Override
+                    public Booking next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return current.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return BookingStore.this.size();
+            }
+        };
+    }
+
+    // Sums the facilities' counts, so adding and removing bookings share no counter
+    public int size() {
+        int size = 0;
+        for (FacilityBookings table : bookingsByFacility) {
+            if (table != null) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (FacilityBookings table : bookingsByFacility) {
+            if (table != null && table.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean claimId(Booking booking) {
+        LongMap<Booking> segment = idSegment(booking.getId());
+        synchronized (segment) {
+            return segment.putIfAbsent(booking.getId(), booking) == null;
+        }
+    }
+
+    private void releaseId(Booking booking) {
+        LongMap<Booking> segment = idSegment(booking.getId());
+        synchronized (segment) {
+            segment.remove(booking.getId(), booking);
+        }
+    }
+
+    // Segmented by ID block (see BookingIds): each facility draws its IDs from one block at a time,
+    // so bookings on different facilities rarely touch the same segment
+    private LongMap<Booking> idSegment(long id) {
+        return bookingsById[(int) (id / BookingIds.BLOCK_SIZE) & (ID_SEGMENTS - 1)];
+    }
+
+    // The facility's table, or null if it never had a booking
+    private FacilityBookings table(int facility) {
+        FacilityBookings[] tables = bookingsByFacility;
+        return facility >= 0 && facility < tables.length ? tables[facility] : null;
+    }
+
+    private FacilityBookings tableFor(int facility) {
+        FacilityBookings table = table(facility);
+        return table != null ? table : addTable(facility);
+    }
+
+    private synchronized FacilityBookings addTable(int facility) {
+        FacilityBookings[] tables = bookingsByFacility;
+        if (facility < tables.length && tables[facility] != null) {
+            return tables[facility];
+        }
+        if (facility >= tables.length) {
+            tables = Arrays.copyOf(tables, Math.max(tables.length * 2, facility + 1));
+        }
+        tables[facility] = new FacilityBookings(facility);
+        bookingsByFacility = tables; // the volatile write publishes the new entry
+        return tables[facility];
+    }
+
+    // One facility's slot range, as a collection
+    private static final class FacilityRange extends AbstractCollection<Booking> {
+        private final FacilityBookings table;
+        private final long fromSlot;
+        private final long toSlot;
+
+        FacilityRange(FacilityBookings table, long fromSlot, long toSlot) {
+            this.table = table;
+            this.fromSlot = fromSlot;
+            this.toSlot = toSlot;
+        }
+
+        @Override
+        public Iterator<Booking> iterator() {
+            return new Range(table, fromSlot, toSlot);
+        }
+
+        @Override
+        public int size() {
+            return table.count(fromSlot, toSlot);
+        }
+    }
+
+    // The same slot range of every facility, merged into one sequence
+    private final class MergedRange extends AbstractCollection<Booking> {
+        private final long fromSlot;
+        private final long toSlot;
+
+        MergedRange(long fromSlot, long toSlot) {
+            this.fromSlot = fromSlot;
+            this.toSlot = toSlot;
+        }
+
+        @Override
+        public Iterator<Booking> iterator() {
+            PriorityQueue<Cursor> heads = new PriorityQueue<>();
+            for (FacilityBookings table : bookingsByFacility) {
+                if (table == null) {
+                    continue;
+                }
+                Cursor cursor = new Cursor(FacilityKeys.normalizedName(table.facility), new Range(table, fromSlot, toSlot));
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+            return new Iterator<Booking>() {
+                @Override
+                public boolean hasNext() {
+                    return !heads.isEmpty();
+                }
+
+                @Override
+                public Booking next() {
+                    Cursor cursor = heads.poll();
+                    if (cursor == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Booking booking = cursor.head;
+                    if (cursor.advance()) {
+                        heads.add(cursor);
+                    }
+                    return booking;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (FacilityBookings table : bookingsByFacility) {
+                if (table != null) {
+                    size += table.count(fromSlot, toSlot);
+                }
+            }
+            return size;
+        }
+    }
+
+    // One facility's position in a merged range
+    private static final class Cursor implements Comparable<Cursor> {
+        private final String facility;
+        private final Iterator<Booking> rest;
+        private Booking head;
+
+        Cursor(String facility, Iterator<Booking> rest) {
+            this.facility = facility;
+            this.rest = rest;
+        }
+
+        boolean advance() {
+            head = rest.hasNext() ? rest.next() : null;
+            return head != null;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int bySlot = Long.compare(head.getSlot(), other.head.getSlot());
+            return bySlot != 0 ? bySlot : facility.compareTo(other.facility);
+        }
+    }
+
+    // Walks a facility's slot range a batch at a time, copying each batch out under the table's
+    // lock. Weakly consistent: it never fails on concurrent changes and picks up after the last
+    // slot it returned, so it sees each booking at most once.
+    private static final class Range implements Iterator<Booking> {
+        private static final int BATCH = 32;
+        private final FacilityBookings table;
+        private final long toSlot;
+        private final Booking[] batch = new Booking[BATCH];
+        private long nextSlot;
+        private int position;
+        private int count;
+
+        Range(FacilityBookings table, long fromSlot, long toSlot) {
+            this.table = table;
+            this.nextSlot = fromSlot;
+            this.toSlot = toSlot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position == count && nextSlot < toSlot) {
+                count = table.copy(nextSlot, toSlot, batch);
+                position = 0;
+                // A short batch means the range was exhausted when it was copied
+                nextSlot = count < BATCH ? toSlot : batch[count - 1].getSlot() + 1;
+            }
+            return position < count;
+        }
+
+        @Override
+        public Booking next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Booking booking = batch[position];
+            batch[position++] = null;
+            return booking;
+        }
+    }
+
+    // One facility's bookings in slot order: a directory of chunks, each a sorted run of up to
+    // CHUNK_SIZE slots next to their bookings. A lookup is two binary searches over primitive
+    // slots, and an insert or delete only shifts entries within one chunk. Guarded by its monitor.
+    private static final class FacilityBookings {
+        private static final int CHUNK_SIZE = 64;
+        private final int facility;
+        // First slot of every chunk, so the right chunk is found without touching the others
+        private long[] firstSlots = new long[4];
+        private Chunk[] chunks = new Chunk[4];
+        private int chunkCount;
+        private int size;
+
+        FacilityBookings(int facility) {
+            this.facility = facility;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized Booking get(long slot) {
+            if (chunkCount == 0) {
+                return null;
+            }
+            Chunk chunk = chunks[chunkOf(slot)];
+            int i = chunk.indexOf(slot);
+            return i >= 0 ? chunk.bookings[i] : null;
+        }
+
+        synchronized boolean add(Booking booking) {
+            long slot = booking.getSlot();
+            if (chunkCount == 0) {
+                insertChunk(0, new Chunk(8));
+            }
+            int c = chunkOf(slot);
+            Chunk chunk = chunks[c];
+            int i = chunk.indexOf(slot);
+            if (i >= 0) {
+                return false;
+            }
+            i = -i - 1;
+            if (chunk.count == CHUNK_SIZE) {
+                // Bookings mostly arrive in date order: past the end of the last chunk a new one is
+                // started, so appending leaves full chunks behind instead of half-empty ones
+                Chunk upper = i == CHUNK_SIZE && c == chunkCount - 1 ? new Chunk(8) : chunk.split();
+                insertChunk(c + 1, upper);
+                if (i > chunk.count || upper.count == 0) {
+                    i -= chunk.count;
+                    chunk = upper;
+                    c++;
+                }
+            }
+            chunk.insert(i, slot, booking);
+            firstSlots[c] = chunk.slots[0];
+            size++;
+            return true;
+        }
+
+        synchronized Booking remove(long slot) {
+            if (chunkCount == 0) {
+                return null;
+            }
+            int c = chunkOf(slot);
+            Chunk chunk = chunks[c];
+            int i = chunk.indexOf(slot);
+            if (i < 0) {
+                return null;
+            }
+            Booking removed = chunk.bookings[i];
+            chunk.delete(i);
+            size--;
+            if (chunk.count == 0) {
+                removeChunk(c);
+            } else {
+                firstSlots[c] = chunk.slots[0];
+                // Keeps chunks from thinning out as bookings are canceled or archived
+                if (c + 1 < chunkCount && chunk.count + chunks[c + 1].count <= CHUNK_SIZE / 2) {
+                    chunk.append(chunks[c + 1]);
+                    removeChunk(c + 1);
+                }
+            }
+            return removed;
+        }
+
+        synchronized Booking floor(long slot) {
+            if (chunkCount == 0) {
+                return null;
+            }
+            Chunk chunk = chunks[chunkOf(slot)];
+            int i = chunk.indexOf(slot);
+            if (i < 0) {
+                i = -i - 2; // the entry before the insertion point
+            }
+            return i >= 0 ? chunk.bookings[i] : null;
+        }
+
+        // Copies the first bookings with fromSlot <= slot < toSlot into out; returns how many
+        synchronized int copy(long fromSlot, long toSlot, Booking[] out) {
+            if (chunkCount == 0) {
+                return 0;
+            }
+            int c = chunkOf(fromSlot);
+            int i = chunks[c].indexOf(fromSlot);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            int n = 0;
+            for (; c < chunkCount && n < out.length; c++, i = 0) {
+                Chunk chunk = chunks[c];
+                for (; i < chunk.count && n < out.length; i++) {
+                    if (chunk.slots[i] >= toSlot) {
+                        return n;
+                    }
+                    out[n++] = chunk.bookings[i];
+                }
+            }
+            return n;
+        }
+
+        // Number of bookings with fromSlot <= slot < toSlot
+        synchronized int count(long fromSlot, long toSlot) {
+            return fromSlot >= toSlot ? 0 : rank(toSlot) - rank(fromSlot);
+        }
+
+        // Number of bookings before the slot
+        private int rank(long slot) {
+            if (chunkCount == 0) {
+                return 0;
+            }
+            int c = chunkOf(slot);
+            int i = chunks[c].indexOf(slot);
+            int rank = i < 0 ? -i - 1 : i;
+            for (int j = 0; j < c; j++) {
+                rank += chunks[j].count;
+            }
+            return rank;
+        }
+
+        // The last chunk starting at or before the slot; the first chunk also takes earlier slots
+        private int chunkOf(long slot) {
+            int low = 1;
+            int high = chunkCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (firstSlots[mid] <= slot) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        private void insertChunk(int c, Chunk chunk) {
+            if (chunkCount == chunks.length) {
+                firstSlots = Arrays.copyOf(firstSlots, chunkCount * 2);
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            System.arraycopy(firstSlots, c, firstSlots, c + 1, chunkCount - c);
+            System.arraycopy(chunks, c, chunks, c + 1, chunkCount - c);
+            chunks[c] = chunk;
+            firstSlots[c] = chunk.count > 0 ? chunk.slots[0] : Long.MIN_VALUE;
+            chunkCount++;
+        }
+
+        private void removeChunk(int c) {
+            System.arraycopy(firstSlots, c + 1, firstSlots, c, chunkCount - c - 1);
+            System.arraycopy(chunks, c + 1, chunks, c, chunkCount - c - 1);
+            chunks[--chunkCount] = null;
+        }
+    }
+
+    // A sorted run of slots and their bookings
+    private static final class Chunk {
+        private long[] slots;
+        private Booking[] bookings;
+        private int count;
+
+        Chunk(int capacity) {
+            slots = new long[capacity];
+            bookings = new Booking[capacity];
+        }
+
+        int indexOf(long slot) {
+            return Arrays.binarySearch(slots, 0, count, slot);
+        }
+
+        void insert(int i, long slot, Booking booking) {
+            if (count == slots.length) {
+                grow(count * 2);
+            }
+            System.arraycopy(slots, i, slots, i + 1, count - i);
+            System.arraycopy(bookings, i, bookings, i + 1, count - i);
+            slots[i] = slot;
+            bookings[i] = booking;
+            count++;
+        }
+
+        void delete(int i) {
+            System.arraycopy(slots, i + 1, slots, i, count - i - 1);
+            System.arraycopy(bookings, i + 1, bookings, i, count - i - 1);
+            bookings[--count] = null;
+        }
+
+        // Moves the upper half into a new chunk and returns it
+        Chunk split() {
+            int half = count / 2;
+            Chunk upper = new Chunk(slots.length);
+            upper.count = count - half;
+            System.arraycopy(slots, half, upper.slots, 0, upper.count);
+            System.arraycopy(bookings, half, upper.bookings, 0, upper.count);
+            Arrays.fill(bookings, half, count, null);
+            count = half;
+            return upper;
+        }
+
+        // Appends the next chunk's entries, which all come after this chunk's
+        void append(Chunk next) {
+            if (count + next.count > slots.length) {
+                grow(count + next.count);
+            }
+            System.arraycopy(next.slots, 0, slots, count, next.count);
+            System.arraycopy(next.bookings, 0, bookings, count, next.count);
+            count += next.count;
+        }
+
+        private void grow(int capacity) {
+            slots = Arrays.copyOf(slots, capacity);
+            bookings = Arrays.copyOf(bookings, capacity);
+        }
+    }
+}
@@ -1,4 +1,5 @@
 public class ConferenceRoom extends StadiumFacility {
+    public static final int DEFAULT_BOOKING_MINUTES = 60;
     private final boolean hasProjector;
     public ConferenceRoom(String facilityName, int capacity, boolean hasProjector) {
         super(facilityName, capacity);
@@ -0,0 +1,385 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads RFC 4180 CSV (comma-separated, fields with commas, quotes or line breaks in double quotes,
+// "" for a quote inside them) one record at a time into a reused row buffer, from any channel:
+// a file for CSV imports, standard input for command scripts. Rows longer than MAX_ROW_BYTES are
+// skipped (and reported) rather than buffered. A quote that is never closed would swallow the
+// rest of the input, so when a quoted field that spans lines runs past MAX_ROW_BYTES or the end
+// of the input, the record is reported as unterminated and reading resumes after the first line
+// break inside that field: the bytes read since then are kept and read again.
+final class CsvReader implements AutoCloseable {
+    private static final int BUFFER_BYTES = 1 << 20;
+    static final int MAX_ROW_BYTES = 1 << 16;
+    static final int MAX_FIELDS = 16;
+    // Raw bytes kept for reading again after an unclosed quote; "" pairs, commas and the like make
+    // a record's raw bytes longer than its row bytes
+    private static final int MAX_REREAD_BYTES = 2 * MAX_ROW_BYTES;
+
+    // Carries an I/O error out of callbacks that can't throw it, like deferDurability's
+    static final class ReadFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ReadFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final byte[] row = new byte[MAX_ROW_BYTES];
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private final Field[] views = new Field[MAX_FIELDS];
+    private int length;
+    private int fields;
+    private boolean tooLong;
+    private boolean tooManyFields;
+    private boolean unterminated;
+    private long nextLine = 1;
+    private long line;
+    private boolean eof;
+    // Bytes to read again before the channel's, after an unclosed quote
+    private byte[] reread = new byte[0];
+    private int rereadPosition;
+    // The current record's raw bytes after the first line break inside a quoted field, and the
+    // line they start on; lost if there are more of them than MAX_REREAD_BYTES
+    private final byte[] kept = new byte[MAX_REREAD_BYTES];
+    private int keptLength;
+    private boolean keeping;
+    private boolean keptLost;
+    private long keptLine;
+
+    // The last decoded name and its bytes, reused while consecutive rows repeat it
+    private String lastString = "";
+    private byte[] lastBytes = new byte[0];
+
+    CsvReader(Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    CsvReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.flip();
+        for (int i = 0; i < MAX_FIELDS; i++) {
+            views[i] = new Field(i);
+        }
+    }
+
+    // Reads the next record; returns false at the end of the input
+    boolean next() {
+        length = 0;
+        fields = 0;
+        tooLong = false;
+        tooManyFields = false;
+        unterminated = false;
+        line = nextLine;
+        keeping = false;
+        keptLength = 0;
+        keptLost = false;
+        boolean any = false;
+        boolean fieldStart = true;
+        boolean quoted = false;
+        boolean quotePending = false; // a quote inside quotes, either "" or the closing one
+        int fieldBegin = 0;
+        while (true) {
+            int next = read();
+            if (next < 0) {
+                if (!any) {
+                    return false;
+                }
+                unterminated = quoted && !quotePending;
+                if (unterminated) {
+                    resync();
+                }
+                endField(fieldBegin);
+                return true;
+            }
+            byte b = (byte) next;
+            any = true;
+            if (keeping) {
+                keep(b);
+            }
+            if (quotePending) {
+                quotePending = false;
+                if (b == '"') {
+                    append(b);
+                    continue;
+                }
+                quoted = false;
+            }
+            if (quoted) {
+                if (b == '"') {
+                    quotePending = true;
+                } else {
+                    if (b == '\n') {
+                        if (!keeping) {
+                            keeping = true;
+                            keptLine = nextLine + 1;
+                        }
+                        nextLine++;
+                    }
+                    append(b);
+                    if (tooLong && keeping) {
+                        unterminated = true;
+                        resync();
+                        endField(fieldBegin);
+                        return true;
+                    }
+                }
+                continue;
+            }
+            if (tooLong) {
+                // Past the limit nothing of the row is kept; just find its end
+                if (b == '\n') {
+                    nextLine++;
+                    endField(fieldBegin);
+                    return true;
+                }
+                continue;
+            }
+            if (b == '"' && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (b == ',') {
+                endField(fieldBegin);
+                fieldBegin = length;
+                fieldStart = true;
+            } else if (b == '\n') {
+                nextLine++;
+                endField(fieldBegin);
+                return true;
+            } else if (b != '\r') {
+                append(b);
+                fieldStart = false;
+            }
+        }
+    }
+
+    // The next raw byte, or -1 at the end of the input
+    private int read() {
+        if (rereadPosition < reread.length) {
+            return reread[rereadPosition++] & 0xff;
+        }
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    private void keep(byte b) {
+        if (keptLength == kept.length) {
+            keptLost = true;
+        } else {
+            kept[keptLength++] = b;
+        }
+    }
+
+    // Goes back to just after the first line break of the unclosed quoted field, by reading the
+    // bytes kept since then again. If too many were read to keep, the input goes on from here.
+    private void resync() {
+        if (!keeping || keptLost) {
+            return;
+        }
+        // Bytes still waiting to be read again come after the ones kept, as they did in the input
+        int waiting = reread.length - rereadPosition;
+        byte[] again = Arrays.copyOf(kept, keptLength + waiting);
+        System.arraycopy(reread, rereadPosition, again, keptLength, waiting);
+        reread = again;
+        rereadPosition = 0;
+        nextLine = keptLine;
+    }
+
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        buffer.clear();
+        try {
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new ReadFailure(e);
+        }
+    }
+
+    private void append(byte b) {
+        if (length == row.length) {
+            tooLong = true;
+        } else {
+            row[length++] = b;
+        }
+    }
+
+    private void endField(int begin) {
+        if (fields == MAX_FIELDS) {
+            tooManyFields = true;
+            return;
+        }
+        starts[fields] = begin;
+        ends[fields] = length;
+        fields++;
+    }
+
+    // Why the record cannot be used at all, or null
+    String problem() {
+        if (unterminated) {
+            return "Quoted field is not closed.";
+        }
+        if (tooLong) {
+            return "Row is longer than " + MAX_ROW_BYTES + " bytes.";
+        }
+        if (tooManyFields) {
+            return "Row has more than " + MAX_FIELDS + " fields.";
+        }
+        return null;
+    }
+
+    // The line the record starts on
+    long line() {
+        return line;
+    }
+
+    int fieldCount() {
+        return fields;
+    }
+
+    int length(int field) {
+        return field < fields ? ends[field] - starts[field] : 0;
+    }
+
+    boolean isBlank() {
+        return fields == 1 && length(0) == 0;
+    }
+
+    // True for the header row, matched column by column
+    boolean isHeader(String header) {
+        if (line != 1) {
+            return false;
+        }
+        int field = 0;
+        int from = 0;
+        while (from <= header.length()) {
+            int comma = header.indexOf(',', from);
+            int to = comma < 0 ? header.length() : comma;
+            if (field >= fields || ends[field] - starts[field] != to - from) {
+                return false;
+            }
+            for (int i = 0; i < to - from; i++) {
+                if (row[starts[field] + i] != header.charAt(from + i)) {
+                    return false;
+                }
+            }
+            field++;
+            from = to + 1;
+        }
+        return field == fields;
+    }
+
+    // Compares the field with lower-case ASCII, ignoring case
+    boolean fieldEquals(int field, String ascii) {
+        if (length(field) != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (Character.toLowerCase((char) (row[starts[field] + i] & 0xff)) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A view of the field for parsing, valid until the next record is read
+    CharSequence text(int field) {
+        return views[field];
+    }
+
+    // The field decoded as UTF-8, reusing the previous String when the bytes are the same
+    String string(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        if (!Arrays.equals(row, start, end, lastBytes, 0, lastBytes.length)) {
+            lastBytes = Arrays.copyOfRange(row, start, end);
+            lastString = new String(lastBytes, StandardCharsets.UTF_8);
+        }
+        return lastString;
+    }
+
+    // Parses a non-negative decimal field; an empty or missing field gives the default
+    int intField(int field, int defaultValue) {
+        return (int) parse(field, defaultValue, Integer.MAX_VALUE);
+    }
+
+    long longField(int field, long defaultValue) {
+        return parse(field, defaultValue, Long.MAX_VALUE);
+    }
+
+    private long parse(int field, long defaultValue, long max) {
+        if (length(field) == 0) {
+            return defaultValue;
+        }
+        long value = 0;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            byte b = row[i];
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || value > (max - digit) / 10) {
+                throw new NumberFormatException("Invalid number: " + new String(row, starts[field],
+                        ends[field] - starts[field], StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class Field implements CharSequence {
+        private final int field;
+
+        Field(int field) {
+            this.field = field;
+        }
+
+        @Override
+        public int length() {
+            return CsvReader.this.length(field);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (row[starts[field] + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(row, starts[field] + from, to - from, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(row, starts[field], length(), StandardCharsets.UTF_8);
+        }
+    }
+}
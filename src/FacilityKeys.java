@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Dense int keys for facility names, matched case-insensitively like everywhere else in the
+// system. A facility is resolved to its key once; stores, calendars and locks index by the key,
+// so the hot paths neither normalize names nor build composite keys. Keys are never reused.
+public final class FacilityKeys {
+    public static final int UNKNOWN = -1;
+    // Exact spellings seen so far, so a repeated lookup costs one hash probe and no normalizing.
+    // Only names that have a key are cached, and only up to this many spellings.
+    private static final int MAX_SPELLINGS = 1 << 16;
+
+    private static final Map<String, Integer> keysByName = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> keysBySpelling = new ConcurrentHashMap<>();
+    // key -> normalized name, and the spelling it was first seen with. A key is published through
+    // keysByName only after its names are written, so whoever holds a key can read them.
+    private static volatile String[] normalizedNames = new String[16];
+    private static volatile String[] displayNames = new String[16];
+    private static int count; // guarded by the class lock
+
+    private FacilityKeys() {
+    }
+
+    // The facility's key, assigning the next free one if the name is new
+    public static int of(String facilityName) {
+        int key = find(facilityName);
+        return key != UNKNOWN ? key : assign(facilityName);
+    }
+
+    // The facility's key, or UNKNOWN if the name never had one
+    public static int find(String facilityName) {
+        Integer key = keysBySpelling.get(facilityName);
+        if (key != null) {
+            return key;
+        }
+        key = keysByName.get(BookingStore.normalize(facilityName));
+        if (key == null) {
+            return UNKNOWN;
+        }
+        if (keysBySpelling.size() < MAX_SPELLINGS) {
+            keysBySpelling.put(facilityName, key);
+        }
+        return key;
+    }
+
+    // The name as it was first spelled, e.g. the one the facility was created with
+    public static String name(int key) {
+        return displayNames[key];
+    }
+
+    public static String normalizedName(int key) {
+        return normalizedNames[key];
+    }
+
+    private static synchronized int assign(String facilityName) {
+        String normalized = BookingStore.normalize(facilityName);
+        Integer existing = keysByName.get(normalized);
+        if (existing != null) {
+            return existing;
+        }
+        int key = count++;
+        if (key == normalizedNames.length) {
+            normalizedNames = Arrays.copyOf(normalizedNames, key * 2);
+            displayNames = Arrays.copyOf(displayNames, key * 2);
+        }
+        normalizedNames[key] = normalized;
+        displayNames[key] = facilityName;
+        keysByName.put(normalized, key);
+        return key;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped locks keyed by facility (see FacilityKeys), so bookings on unrelated facilities never contend
+public class FacilityLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public FacilityLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    public FacilityLocks(int minStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1; // round up to a power of two
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    // Stripe index for a facility key; keys are dense, so consecutive facilities get different stripes
+    public int stripeFor(int facilityKey) {
+        return facilityKey & mask;
+    }
+
+    // Stripe index for a facility name; names that differ only in case share a stripe. A name
+    // without a key has no facility or bookings to protect, so it just gets a stripe by its hash.
+    public int stripeFor(String facilityName) {
+        int key = FacilityKeys.find(facilityName);
+        if (key != FacilityKeys.UNKNOWN) {
+            return stripeFor(key);
+        }
+        int h = BookingStore.normalize(facilityName).hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public Lock lockFor(StadiumFacility facility) {
+        return stripes[stripeFor(facility.getKey())];
+    }
+
+    public Lock lockFor(String facilityName) {
+        return stripes[stripeFor(facilityName)];
+    }
+
+    public Lock lockAt(int stripe) {
+        return stripes[stripe];
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    // Locks every stripe in index order, stopping all booking activity (used for checkpoints)
+    public void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    public void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+}
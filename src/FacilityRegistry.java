@@ -0,0 +1,66 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Case-insensitive facility registry with constant-time lookup by name or facility key
+public class FacilityRegistry {
+    // Facility key -> facility, replaced as a whole on every change, so lookups take no lock
+    private volatile StadiumFacility[] facilitiesByKey = new StadiumFacility[0];
+    // Registration order, for listing facilities in the order they were added
+    private final List<StadiumFacility> facilities = new CopyOnWriteArrayList<>();
+
+    // Registers the facility, returns false if one with the same name (ignoring case) already exists
+    public synchronized boolean add(StadiumFacility facility) {
+        int key = facility.getKey();
+        StadiumFacility[] byKey = facilitiesByKey;
+        if (key < byKey.length && byKey[key] != null) {
+            return false;
+        }
+        byKey = Arrays.copyOf(byKey, Math.max(byKey.length, key + 1));
+        byKey[key] = facility;
+        facilitiesByKey = byKey;
+        facilities.add(facility);
+        return true;
+    }
+
+    // Unregisters exactly this facility; false if it isn't registered
+    public synchronized boolean remove(StadiumFacility facility) {
+        int key = facility.getKey();
+        StadiumFacility[] byKey = facilitiesByKey;
+        if (key >= byKey.length || byKey[key] != facility) {
+            return false;
+        }
+        byKey = byKey.clone();
+        byKey[key] = null;
+        facilitiesByKey = byKey;
+        facilities.remove(facility);
+        return true;
+    }
+
+    // Returns the facility with the given name (ignoring case), or null if there is none
+    public StadiumFacility find(String facilityName) {
+        return find(FacilityKeys.find(facilityName));
+    }
+
+    // Returns the facility with the given key, or null if there is none
+    public StadiumFacility find(int key) {
+        StadiumFacility[] byKey = facilitiesByKey;
+        return key >= 0 && key < byKey.length ? byKey[key] : null;
+    }
+
+    public boolean contains(String facilityName) {
+        return find(facilityName) != null;
+    }
+
+    public List<StadiumFacility> asList() {
+        return facilities;
+    }
+
+    public int size() {
+        return facilities.size();
+    }
+
+    public boolean isEmpty() {
+        return facilities.isEmpty();
+    }
+}
@@ -0,0 +1,276 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Simulates a ticket drop: many buyers hitting StadiumManager at once. Builds a stadium of seating
+// sections and conference rooms, then runs a closed loop of bookings and cancellations on the
+// given number of threads. Buyers favour a few hot sections (Zipf-distributed) within one window
+// of start times, so conflicts and sold-out sections are common. Reports throughput, latency
+// percentiles, the outcome mix, and checks afterwards that no facility was oversold and no
+// booking or unit was lost.
+//
+// Usage: java LoadSimulator [--threads 16] [--operations 500000] [--sections 40] [--rooms 4]
+//                           [--capacity 2000] [--slots 1440] [--zipf 1.1] [--cancel-percent 10]
+//                           [--journal]
+// --journal logs every change to a temporary journal file, so latencies include the fsync.
+public class LoadSimulator {
+    private static final int MAX_PARTY = 6;
+    private static final int[] MEETING_MINUTES = {30, 60, 90, 120};
+
+    private int threads = 16;
+    private int operations = 500_000;
+    private int sections = 40;
+    private int rooms = 4;
+    private int capacity = 2_000;
+    private int slots = 1_440;
+    private double zipfExponent = 1.1;
+    private int cancelPercent = 10;
+    private boolean journaled;
+
+    private StadiumManager manager;
+    private StadiumFacility[] facilities;
+    private double[] popularity; // cumulative Zipf weights over facilities
+    private long firstSlot;
+    // Units each facility should hold according to the buyers' own bookkeeping
+    private AtomicLongArray expectedUnits;
+
+    public static void main(String[] args) throws Exception {
+        LoadSimulator simulator = new LoadSimulator();
+        simulator.parseArgs(args);
+        simulator.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--operations":
+                    operations = Integer.parseInt(args[++i]);
+                    break;
+                case "--sections":
+                    sections = Integer.parseInt(args[++i]);
+                    break;
+                case "--rooms":
+                    rooms = Integer.parseInt(args[++i]);
+                    break;
+                case "--capacity":
+                    capacity = Integer.parseInt(args[++i]);
+                    break;
+                case "--slots":
+                    slots = Integer.parseInt(args[++i]);
+                    break;
+                case "--zipf":
+                    zipfExponent = Double.parseDouble(args[++i]);
+                    break;
+                case "--cancel-percent":
+                    cancelPercent = Integer.parseInt(args[++i]);
+                    break;
+                case "--journal":
+                    journaled = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (threads <= 0 || operations <= 0 || sections + rooms <= 0 || capacity <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("Counts must be positive.");
+        }
+    }
+
+    private void run() throws Exception {
+        Path journalFile = null;
+        if (journaled) {
+            journalFile = Files.createTempFile("load-simulator", ".journal");
+            Files.delete(journalFile);
+            manager = new StadiumManager(BookingJournal.open(journalFile));
+        } else {
+            manager = new StadiumManager();
+        }
+        buildStadium();
+
+        System.out.println("Simulating " + operations + " operations on " + threads + " threads against "
+                + sections + " sections and " + rooms + " rooms" + (journaled ? " (journaled)" : "") + "...");
+        Worker[] workers = new Worker[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(operations / threads + (t < operations % threads ? 1 : 0), start);
+            Thread thread = new Thread(workers[t], "buyer-" + t);
+            thread.start();
+            running.add(thread);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        report(workers, elapsed);
+        try {
+            manager.close();
+        } finally {
+            if (journalFile != null) {
+                Files.deleteIfExists(journalFile);
+            }
+        }
+    }
+
+    private void buildStadium() {
+        facilities = new StadiumFacility[sections + rooms];
+        for (int i = 0; i < facilities.length; i++) {
+            if (i < sections) {
+                manager.addFacility("Section " + (i + 1), capacity, i % 5 == 0 ? "VIP" : "Regular", false);
+                facilities[i] = manager.getFacility("Section " + (i + 1));
+            } else {
+                manager.addFacility("Room " + (i - sections + 1), Math.max(1, capacity / 100), null, true);
+                facilities[i] = manager.getFacility("Room " + (i - sections + 1));
+            }
+        }
+        // Facility k is chosen with weight 1 / (k + 1)^s, so the first sections are the hot ones
+        popularity = new double[facilities.length];
+        double total = 0;
+        for (int k = 0; k < facilities.length; k++) {
+            total += 1.0 / Math.pow(k + 1, zipfExponent);
+            popularity[k] = total;
+        }
+        for (int k = 0; k < popularity.length; k++) {
+            popularity[k] /= total;
+        }
+        expectedUnits = new AtomicLongArray(facilities.length);
+        // The match is tomorrow; buyers pick start times in the day from 18:00 on
+        firstSlot = BookingSlot.pack(BookingSlot.today() + 1, 18 * 60);
+    }
+
+    private int pickFacility(ThreadLocalRandom random) {
+        int index = Arrays.binarySearch(popularity, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, popularity.length - 1);
+    }
+
+    private void report(Worker[] workers, long elapsedNanos) {
+        int total = 0;
+        long[] outcomes = new long[BookingStatus.values().length];
+        long cancels = 0;
+        long failedCancels = 0;
+        for (Worker worker : workers) {
+            total += worker.count;
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] += worker.outcomes[i];
+            }
+            cancels += worker.cancels;
+            failedCancels += worker.failedCancels;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("Throughput: %.0f ops/s (%d operations in %.2f s)%n",
+                total * 1e9 / elapsedNanos, total, elapsedNanos / 1e9);
+        System.out.printf("Latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+                percentile(latencies, 0.999) / 1e3, latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e3);
+        for (BookingStatus status : BookingStatus.values()) {
+            if (outcomes[status.ordinal()] > 0) {
+                System.out.println("  " + status + ": " + outcomes[status.ordinal()]);
+            }
+        }
+        System.out.println("  CANCELED: " + cancels + (failedCancels > 0 ? " (" + failedCancels + " not found)" : ""));
+
+        // Every facility's counter must match both the buyers' bookkeeping and the stored bookings
+        int oversold = 0;
+        long lostUpdates = 0;
+        for (int i = 0; i < facilities.length; i++) {
+            StadiumFacility facility = facilities[i];
+            long stored = 0;
+            for (Booking booking : Booking.bookings.forFacility(facility.getFacilityName())) {
+                stored += booking.getBookedUnits();
+            }
+            if (facility.getCurrentBookings() > facility.getCapacity()) {
+                oversold++;
+            }
+            lostUpdates += Math.abs(expectedUnits.get(i) - facility.getCurrentBookings());
+            lostUpdates += Math.abs(stored - facility.getCurrentBookings());
+        }
+        System.out.println("Oversold facilities: " + oversold + ", lost updates (units): " + lostUpdates);
+        if (oversold > 0 || lostUpdates > 0) {
+            System.out.println("CONSISTENCY CHECK FAILED");
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    // One buyer thread. Results are kept per thread and merged once all threads are done.
+    private final class Worker implements Runnable {
+        private final int operations;
+        private final CountDownLatch start;
+        private final long[] latencies;
+        private final long[] outcomes = new long[BookingStatus.values().length];
+        private int count;
+        private long cancels;
+        private long failedCancels;
+        // This buyer's own bookings, candidates for cancellation
+        private final List<long[]> held = new ArrayList<>(); // {facility index, slot, units}
+
+        Worker(int operations, CountDownLatch start) {
+            this.operations = operations;
+            this.start = start;
+            this.latencies = new long[operations];
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (int op = 0; op < operations; op++) {
+                if (!held.isEmpty() && random.nextInt(100) < cancelPercent) {
+                    long[] booking = held.remove(random.nextInt(held.size()));
+                    StadiumFacility facility = facilities[(int) booking[0]];
+                    long begin = System.nanoTime();
+                    Booking removed = manager.cancel(facility.getFacilityName(), booking[1]);
+                    latencies[count++] = System.nanoTime() - begin;
+                    if (removed != null) {
+                        expectedUnits.addAndGet((int) booking[0], -removed.getBookedUnits());
+                        cancels++;
+                    } else {
+                        failedCancels++;
+                    }
+                    continue;
+                }
+                int index = pickFacility(random);
+                StadiumFacility facility = facilities[index];
+                long slot = firstSlot + random.nextInt(slots);
+                int units = facility instanceof ConferenceRoom ? 1 : 1 + random.nextInt(MAX_PARTY);
+                int duration = MEETING_MINUTES[random.nextInt(MEETING_MINUTES.length)];
+                long begin = System.nanoTime();
+                BookingStatus status = manager.book(facility.getFacilityName(), slot, units, duration);
+                latencies[count++] = System.nanoTime() - begin;
+                outcomes[status.ordinal()]++;
+                if (status == BookingStatus.SUCCESS) {
+                    expectedUnits.addAndGet(index, units);
+                    held.add(new long[]{index, slot, units});
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+// Per-facility, per-day occupancy bitmaps at 5-minute granularity. Each day is 288 bits (5 longs),
+// so "is this interval free" is a handful of word-level AND operations. Facilities are indexed by
+// their key (see FacilityKeys) and days by a primitive map, so checks allocate nothing. Each
+// facility's days are guarded by their own monitor: callers serialize updates per facility
+// (StadiumManager's FacilityLocks), and reads of other facilities never contend.
+public class OccupancyCalendar {
+    public static final int GRANULARITY_MINUTES = 5;
+    private static final int BUCKETS_PER_DAY = BookingSlot.MINUTES_PER_DAY / GRANULARITY_MINUTES;
+    private static final int WORDS_PER_DAY = (BUCKETS_PER_DAY + 63) / 64;
+
+    // facility key -> epoch day -> occupancy bits for that day
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private volatile LongMap<long[]>[] calendars = new LongMap[0];
+
+    public boolean isFree(String facilityName, long slot, int durationMinutes) {
+        return isFree(FacilityKeys.find(facilityName), slot, durationMinutes);
+    }
+
+    // Returns true if no booking overlaps [slot, slot + durationMinutes)
+    public boolean isFree(int facility, long slot, int durationMinutes) {
+        LongMap<long[]> days = calendar(facility);
+        if (days == null) {
+            return true;
+        }
+        long end = endBucket(slot, durationMinutes);
+        synchronized (days) {
+            for (long bucket = startBucket(slot); bucket < end; ) {
+                long day = Math.floorDiv(bucket, BUCKETS_PER_DAY);
+                long dayStart = day * BUCKETS_PER_DAY;
+                int to = (int) Math.min(BUCKETS_PER_DAY, end - dayStart);
+                long[] words = days.get(day);
+                if (words != null && anySet(words, (int) (bucket - dayStart), to)) {
+                    return false;
+                }
+                bucket = dayStart + to;
+            }
+        }
+        return true;
+    }
+
+    public void occupy(String facilityName, long slot, int durationMinutes) {
+        occupy(FacilityKeys.of(facilityName), slot, durationMinutes);
+    }
+
+    // Marks the interval as occupied; the caller must have checked isFree first
+    public void occupy(int facility, long slot, int durationMinutes) {
+        LongMap<long[]> days = calendarFor(facility);
+        long end = endBucket(slot, durationMinutes);
+        synchronized (days) {
+            for (long bucket = startBucket(slot); bucket < end; ) {
+                long day = Math.floorDiv(bucket, BUCKETS_PER_DAY);
+                long dayStart = day * BUCKETS_PER_DAY;
+                int to = (int) Math.min(BUCKETS_PER_DAY, end - dayStart);
+                long[] words = days.get(day);
+                if (words == null) {
+                    words = new long[WORDS_PER_DAY];
+                    days.put(day, words);
+                }
+                update(words, (int) (bucket - dayStart), to, true);
+                bucket = dayStart + to;
+            }
+        }
+    }
+
+    public void release(String facilityName, long slot, int durationMinutes) {
+        release(FacilityKeys.find(facilityName), slot, durationMinutes);
+    }
+
+    // Frees the interval again, dropping days that become empty
+    public void release(int facility, long slot, int durationMinutes) {
+        LongMap<long[]> days = calendar(facility);
+        if (days == null) {
+            return;
+        }
+        long end = endBucket(slot, durationMinutes);
+        synchronized (days) {
+            for (long bucket = startBucket(slot); bucket < end; ) {
+                long day = Math.floorDiv(bucket, BUCKETS_PER_DAY);
+                long dayStart = day * BUCKETS_PER_DAY;
+                int to = (int) Math.min(BUCKETS_PER_DAY, end - dayStart);
+                long[] words = days.get(day);
+                if (words != null) {
+                    update(words, (int) (bucket - dayStart), to, false);
+                    if (isEmpty(words)) {
+                        days.remove(day);
+                    }
+                }
+                bucket = dayStart + to;
+            }
+        }
+    }
+
+    // The facility's days, or null if it never had a booking with a duration
+    private LongMap<long[]> calendar(int facility) {
+        LongMap<long[]>[] all = calendars;
+        return facility >= 0 && facility < all.length ? all[facility] : null;
+    }
+
+    private LongMap<long[]> calendarFor(int facility) {
+        LongMap<long[]> days = calendar(facility);
+        return days != null ? days : addCalendar(facility);
+    }
+
+    private synchronized LongMap<long[]> addCalendar(int facility) {
+        LongMap<long[]>[] all = calendars;
+        if (facility < all.length && all[facility] != null) {
+            return all[facility];
+        }
+        if (facility >= all.length) {
+            all = Arrays.copyOf(all, Math.max(all.length * 2, facility + 1));
+        }
+        all[facility] = new LongMap<>();
+        calendars = all; // the volatile write publishes the new entry
+        return all[facility];
+    }
+
+    // First minute a booking blocks: the start of its first bucket, or just its slot if it has no length
+    public static long blockedFrom(long slot, int durationMinutes) {
+        return durationMinutes > 0 ? startBucket(slot) * GRANULARITY_MINUTES : slot;
+    }
+
+    // Minute after the last one a booking blocks, matching blockedFrom
+    public static long blockedUntil(long slot, int durationMinutes) {
+        return durationMinutes > 0 ? endBucket(slot, durationMinutes) * GRANULARITY_MINUTES : slot + 1;
+    }
+
+    private static long startBucket(long slot) {
+        return Math.floorDiv(slot, GRANULARITY_MINUTES);
+    }
+
+    // Exclusive end bucket; a booking that ends mid-bucket occupies the whole bucket
+    private static long endBucket(long slot, int durationMinutes) {
+        return Math.floorDiv(slot + durationMinutes + GRANULARITY_MINUTES - 1, GRANULARITY_MINUTES);
+    }
+
+    // Mask of the bits in word w that fall inside [from, to)
+    private static long mask(int w, int from, int to) {
+        long mask = -1L;
+        if (w == from >>> 6) {
+            mask &= -1L << (from & 63);
+        }
+        if (w == (to - 1) >>> 6) {
+            mask &= -1L >>> (63 - ((to - 1) & 63));
+        }
+        return mask;
+    }
+
+    private static boolean anySet(long[] words, int from, int to) {
+        for (int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+            if ((words[w] & mask(w, from, to)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void update(long[] words, int from, int to, boolean occupied) {
+        for (int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+            if (occupied) {
+                words[w] |= mask(w, from, to);
+            } else {
+                words[w] &= ~mask(w, from, to);
+            }
+        }
+    }
+
+    private static boolean isEmpty(long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Units of a facility set aside for a buyer for a limited time, e.g. while they pay. The units
+// count against the facility's availability until the hold is confirmed (they become a booking),
+// released, or expires. Exactly one of those happens: the first to move the hold out of HELD wins.
+public class SeatHold {
+    public enum State {
+        HELD,
+        CONFIRMED,
+        RELEASED,
+        EXPIRED
+    }
+
+    private final long id;
+    private final StadiumFacility facility;
+    private final int units;
+    private final long expiresAtNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(State.HELD);
+    // Its entry on the expiry wheel, taken off when the hold is settled before its time
+    private volatile TimingWheel.Timeout<SeatHold> expiry;
+
+    public SeatHold(long id, StadiumFacility facility, int units, long ttl, TimeUnit unit) {
+        this.id = id;
+        this.facility = facility;
+        this.units = units;
+        this.expiresAtNanos = System.nanoTime() + unit.toNanos(ttl);
+    }
+
+    // Also the confirmation number of the booking the hold turns into
+    public long getId() {
+        return id;
+    }
+
+    public StadiumFacility getFacility() {
+        return facility;
+    }
+
+    public String getFacilityName() {
+        return facility.getFacilityName();
+    }
+
+    public int getUnits() {
+        return units;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getRemainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isPastExpiry() {
+        return System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    // A hold confirmed or released before its timeout was set takes the timeout off right away
+    public void setExpiry(TimingWheel.Timeout<SeatHold> expiry) {
+        this.expiry = expiry;
+        State settled = state.get();
+        if (settled != State.HELD && settled != State.EXPIRED) {
+            expiry.cancel();
+        }
+    }
+
+    // Moves the hold from HELD to the outcome; false if it was already settled. A hold confirmed or
+    // released early is taken off the expiry wheel.
+    public boolean settle(State outcome) {
+        if (!state.compareAndSet(State.HELD, outcome)) {
+            return false;
+        }
+        TimingWheel.Timeout<SeatHold> timeout = expiry;
+        if (timeout != null && outcome != State.EXPIRED) {
+            timeout.cancel();
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Hold #" + id + " " + facility.getFacilityName() + " - " + units + " units - " + state.get();
+    }
+}
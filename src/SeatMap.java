@@ -0,0 +1,228 @@
+// Seat-level occupancy of a seating section: one bit per seat, rows stored as runs of long words.
+// The length of each row's largest free run is kept in a max tree over the rows, so the front-most
+// row that can hold a party is found in O(log rows) and only that row's words are touched.
+// Not thread-safe; SeatingSection serializes access.
+public class SeatMap {
+    private final int seatCount;
+    private final int seatsPerRow;
+    private final int rows;
+    private final int wordsPerRow;
+    // Set bits are taken seats; the padding bits after each row's last seat are always set
+    private final long[] taken;
+    // Implicit binary tree: leaf leaves + row holds the row's largest free run, every inner node
+    // the largest run below it. Leaves past the last row stay 0.
+    private final int[] largestFreeRun;
+    private final int leaves;
+    private int freeSeats;
+
+    // Lays out the seats in rows of seatsPerRow, the last row holding whatever is left over
+    public SeatMap(int seatCount, int seatsPerRow) {
+        if (seatCount < 0 || seatsPerRow <= 0) {
+            throw new IllegalArgumentException("Invalid seat layout.");
+        }
+        this.seatCount = seatCount;
+        this.seatsPerRow = seatsPerRow;
+        this.rows = (seatCount + seatsPerRow - 1) / seatsPerRow;
+        this.wordsPerRow = (seatsPerRow + 63) >>> 6;
+        this.taken = new long[rows * wordsPerRow];
+        this.leaves = Integer.highestOneBit(Math.max(1, rows - 1)) << 1; // rounded up to a power of two
+        this.largestFreeRun = new int[2 * leaves];
+        for (int row = 0; row < rows; row++) {
+            int length = rowLength(row);
+            for (int bit = length; bit < wordsPerRow * 64; bit++) {
+                taken[row * wordsPerRow + (bit >>> 6)] |= 1L << bit;
+            }
+            largestFreeRun[leaves + row] = length;
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            largestFreeRun[node] = Math.max(largestFreeRun[2 * node], largestFreeRun[2 * node + 1]);
+        }
+        this.freeSeats = seatCount;
+    }
+
+    // Takes count adjacent seats and returns the number of the first one, or -1 if no row has room.
+    // Picks the lowest-numbered row whose largest free run fits the party, and the first run there
+    // that fits, so parties fill the section from the front.
+    public int allocate(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Number of seats must be positive.");
+        }
+        if (largestFreeRun[1] < count) {
+            return -1;
+        }
+        // Down the tree, preferring the left (lower-numbered) half whenever it has room
+        int node = 1;
+        while (node < leaves) {
+            node = largestFreeRun[2 * node] >= count ? 2 * node : 2 * node + 1;
+        }
+        int row = node - leaves;
+        int start = findRun(row, count);
+        setRange(row, start, start + count, true);
+        updateLargestFreeRun(row);
+        freeSeats -= count;
+        return row * seatsPerRow + start;
+    }
+
+    // Takes exactly the count seats starting at firstSeat, e.g. those of a booking being restored;
+    // false if any of them is already taken. They must lie in one row.
+    public boolean take(int firstSeat, int count) {
+        int row = checkBlock(firstSeat, count);
+        int start = firstSeat - row * seatsPerRow;
+        if (nextTaken(row, start) < start + count) {
+            return false;
+        }
+        setRange(row, start, start + count, true);
+        updateLargestFreeRun(row);
+        freeSeats -= count;
+        return true;
+    }
+
+    // Frees count seats starting at firstSeat; they must all be taken and lie in one row
+    public void release(int firstSeat, int count) {
+        int row = checkBlock(firstSeat, count);
+        int start = firstSeat - row * seatsPerRow;
+        if (nextFree(row, start) < start + count) {
+            throw new IllegalStateException("Cannot release a seat that is not taken!");
+        }
+        setRange(row, start, start + count, false);
+        updateLargestFreeRun(row);
+        freeSeats += count;
+    }
+
+    public boolean isTaken(int seat) {
+        if (seat < 0 || seat >= seatCount) {
+            throw new IllegalArgumentException("Seat out of range.");
+        }
+        return isTaken(seat / seatsPerRow, seat % seatsPerRow);
+    }
+
+    public int getFreeSeats() {
+        return freeSeats;
+    }
+
+    public int getSeatCount() {
+        return seatCount;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    public int getLargestFreeRun(int row) {
+        return largestFreeRun[leaves + row];
+    }
+
+    // Row and seat numbers as printed on a ticket, both starting at 1
+    public String describe(int firstSeat, int count) {
+        int row = firstSeat / seatsPerRow + 1;
+        int seat = firstSeat % seatsPerRow + 1;
+        return count == 1
+                ? "Row " + row + ", Seat " + seat
+                : "Row " + row + ", Seats " + seat + "-" + (seat + count - 1);
+    }
+
+    // Row of a block of seats, which must lie in that one row
+    private int checkBlock(int firstSeat, int count) {
+        if (count <= 0 || firstSeat < 0 || firstSeat + count > seatCount) {
+            throw new IllegalArgumentException("Seats out of range.");
+        }
+        int row = firstSeat / seatsPerRow;
+        if (firstSeat - row * seatsPerRow + count > rowLength(row)) {
+            throw new IllegalArgumentException("Seats must lie in a single row.");
+        }
+        return row;
+    }
+
+    private int rowLength(int row) {
+        return row == rows - 1 ? seatCount - row * seatsPerRow : seatsPerRow;
+    }
+
+    private boolean isTaken(int row, int seat) {
+        return (taken[row * wordsPerRow + (seat >>> 6)] & (1L << seat)) != 0;
+    }
+
+    // First free run of at least count seats in the row; the caller knows one exists
+    private int findRun(int row, int count) {
+        int seat = nextFree(row, 0);
+        while (true) {
+            int end = nextTaken(row, seat);
+            if (end - seat >= count) {
+                return seat;
+            }
+            seat = nextFree(row, end);
+        }
+    }
+
+    // Recomputes the row's largest free run and the maxima above it
+    private void updateLargestFreeRun(int row) {
+        int node = leaves + row;
+        largestFreeRun[node] = computeLargestFreeRun(row);
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            largestFreeRun[node] = Math.max(largestFreeRun[2 * node], largestFreeRun[2 * node + 1]);
+        }
+    }
+
+    private int computeLargestFreeRun(int row) {
+        int largest = 0;
+        int limit = wordsPerRow * 64;
+        for (int seat = nextFree(row, 0); seat < limit; seat = nextFree(row, seat)) {
+            int end = nextTaken(row, seat);
+            largest = Math.max(largest, end - seat);
+            seat = end;
+        }
+        return largest;
+    }
+
+    // Index of the first free seat at or after from, or wordsPerRow * 64 if there is none
+    private int nextFree(int row, int from) {
+        int base = row * wordsPerRow;
+        int w = from >>> 6;
+        if (w >= wordsPerRow) {
+            return wordsPerRow * 64;
+        }
+        long word = ~taken[base + w] & (-1L << from);
+        while (word == 0) {
+            if (++w == wordsPerRow) {
+                return wordsPerRow * 64;
+            }
+            word = ~taken[base + w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    // Index of the first taken seat at or after from; the padding guarantees one exists for a free seat
+    private int nextTaken(int row, int from) {
+        int base = row * wordsPerRow;
+        int w = from >>> 6;
+        long word = taken[base + w] & (-1L << from);
+        while (word == 0) {
+            if (++w == wordsPerRow) {
+                return wordsPerRow * 64;
+            }
+            word = taken[base + w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private void setRange(int row, int from, int to, boolean value) {
+        int base = row * wordsPerRow;
+        for (int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+            long mask = -1L;
+            if (w == from >>> 6) {
+                mask &= -1L << (from & 63);
+            }
+            if (w == (to - 1) >>> 6) {
+                mask &= -1L >>> (63 - ((to - 1) & 63));
+            }
+            if (value) {
+                taken[base + w] |= mask;
+            } else {
+                taken[base + w] &= ~mask;
+            }
+        }
+    }
+}
@@ -1,22 +1,64 @@
 public class SeatingSection extends StadiumFacility {
+    public static final int DEFAULT_SEATS_PER_ROW = 20;
     private static final String type =null ;
     private final String seatType; // VIP or Regular
+    private final SeatMap seats; // Which individual seats are taken
 
     public SeatingSection(String facilityName, int capacity, String seatType) {
+        this(facilityName, capacity, seatType, DEFAULT_SEATS_PER_ROW);
+    }
+
+    public SeatingSection(String facilityName, int capacity, String seatType, int seatsPerRow) {
         super(facilityName, capacity);
         this.seatType = seatType;
+        this.seats = new SeatMap(Math.max(0, capacity), seatsPerRow);
     }
 
     public String getSeatType() {
         return seatType;
     }
 
+    public int getSeatsPerRow() {
+        return seats.getSeatsPerRow();
+    }
+
+    public int getRows() {
+        return seats.getRows();
+    }
+
+    // Takes count adjacent seats in one row and returns the first seat number, or -1 if no row has
+    // that many adjacent free seats. Seats only: the units are reserved separately by the caller,
+    // which holds the section's stripe lock, so the two always change together.
+    public synchronized int allocateSeats(int count) {
+        return seats.allocate(count);
+    }
+
+    // Takes exactly these seats, e.g. those of a booking being restored; false if any is taken
+    public synchronized boolean takeSeats(int firstSeat, int count) {
+        return seats.take(firstSeat, count);
+    }
+
+    // Frees seats taken by allocateSeats or takeSeats
+    public synchronized void releaseSeats(int firstSeat, int count) {
+        seats.release(firstSeat, count);
+    }
+
+    public synchronized boolean isSeatTaken(int seat) {
+        return seats.isTaken(seat);
+    }
+
+    // Ticket-style description of a block of seats, e.g. "Row 3, Seats 5-10"
+    public String describeSeats(int firstSeat, int count) {
+        return seats.describe(firstSeat, count);
+    }
+
     @Override
     public String toString() {
         return "Seating Section - Facility Name: " + getFacilityName() +
                 ", Capacity: " + getCapacity() +
                 ", Current Bookings: " + getCurrentBookings() +
                 ", Seat Type: " + seatType +
+                ", Rows: " + getRows() + " x " + getSeatsPerRow() +
                 ", Available: " + (checkAvailability(1) ? "Yes" : "No");
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,49 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 public class StadiumBookingSystem {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Scanner scanner = new Scanner(System.in);
-        StadiumManager manager = new StadiumManager();
+        // Restore the last snapshot plus the journal written since, then keep checkpointing
+        long start = System.nanoTime();
+        StadiumManager manager = StadiumManager.open(Paths.get(StadiumManager.JOURNAL_FILE),
+                Paths.get(StadiumManager.SNAPSHOT_FILE));
+        manager.startCheckpoints(5, TimeUnit.MINUTES);
+        manager.startMetricsDump(Paths.get(StadiumManager.METRICS_FILE), 1, TimeUnit.MINUTES);
+        manager.startArchiving(Paths.get(StadiumManager.ARCHIVE_FILE), 1, 1, TimeUnit.HOURS);
+        System.out.println("Restored " + manager.getFacilitiesAsList().size() + " facilities and "
+                + Booking.bookings.size() + " bookings in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+
+        // Headless mode: serve the JSON API until the process is stopped
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(manager, args.length > 1 ? Integer.parseInt(args[1]) : BookingHttpServer.DEFAULT_PORT);
+            return;
+        }
+        // Script mode: run the commands from a file, or from stdin for "-", then exit
+        if (args.length > 1 && args[0].equals("--batch")) {
+            runBatch(manager, args[1]);
+            return;
+        }
+        // CSV mode: run each --import-*/--export-* option in order, then exit
+        if (args.length > 1 && (args[0].startsWith("--import-") || args[0].startsWith("--export-"))) {
+            try {
+                runCsv(manager, args);
+            } finally {
+                manager.close();
+            }
+            return;
+        }
 
         System.out.println("Welcome to Stadium Booking System!");
 
@@ -12,7 +53,8 @@ public class StadiumBookingSystem {
             System.out.println("3. Make Booking");
             System.out.println("4. View Bookings");
             System.out.println("5. Cancel Booking");
-            System.out.println("6. Exit");
+            System.out.println("6. View Metrics");
+            System.out.println("7. Exit");
             System.out.print("Enter your choice: ");
 
             int choice = scanner.nextInt();
@@ -34,13 +76,78 @@ public class StadiumBookingSystem {
                     manager.cancelBooking(scanner);
                     break;
                 case 6:
+                    manager.viewMetrics();
+                    break;
+                case 7:
                     System.out.println("Exiting Stadium Booking System. Goodbye");
+                    manager.close();
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
             }
         }
     }
+
+    private static void runBatch(StadiumManager manager, String source) throws IOException {
+        ReadableByteChannel script = source.equals("-")
+                ? Channels.newChannel(System.in)
+                : FileChannel.open(Paths.get(source), StandardOpenOption.READ);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        try {
+            new BookingScript(manager, out).run(script);
+        } finally {
+            out.flush();
+            manager.close();
+        }
+    }
+
+    private static void runCsv(StadiumManager manager, String[] args) throws IOException {
+        // Print the first bad rows only, a large file could have millions
+        long[] reported = {0};
+        BookingCsv.BadRowListener listener = (line, reason) -> {
+            if (reported[0]++ < 100) {
+                System.out.println("Line " + line + ": " + reason);
+            }
+        };
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            Path file = Paths.get(args[i + 1]);
+            switch (args[i]) {
+                case "--import-facilities":
+                    System.out.println("Facilities: " + BookingCsv.importFacilities(manager, file, listener));
+                    break;
+                case "--import-bookings":
+                    System.out.println("Bookings: " + BookingCsv.importBookings(manager, file, listener));
+                    break;
+                case "--export-facilities":
+                    System.out.println("Exported " + BookingCsv.exportFacilities(manager, file) + " facilities to " + file);
+                    break;
+                case "--export-bookings":
+                    System.out.println("Exported " + BookingCsv.exportBookings(manager, file) + " bookings to " + file);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        if (reported[0] > 100) {
+            System.out.println("(" + (reported[0] - 100) + " more bad rows not shown)");
+        }
+    }
+
+    private static void serve(StadiumManager manager, int port) throws IOException {
+        BookingHttpServer server = new BookingHttpServer(manager, port);
+        server.start();
+        // On Ctrl+C, finish running requests, then checkpoint and close the journal
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                manager.close();
+            } catch (IOException e) {
+                System.out.println("Could not save bookings: " + e.getMessage());
+            }
+        }));
+        System.out.println("Serving the booking API on http://localhost:" + server.getPort() + "/ (Ctrl+C to stop)");
+    }
 }
 
 
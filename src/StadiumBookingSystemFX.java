@@ -1,5 +1,6 @@
 import javafx.animation.*;
 import javafx.application.*;
+import javafx.beans.InvalidationListener;
 import javafx.collections.*;
 import javafx.geometry.*;
 import javafx.scene.*;
@@ -15,17 +16,26 @@ import javafx.scene.text.*;
 import javafx.stage.*;
 import javafx.util.*;
 import javafx.util.Duration;
+import java.io.*;
+import java.nio.file.*;
 import java.time.*;
 import java.time.format.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 import java.util.stream.*;
 
 public class StadiumBookingSystemFX extends Application {
-    private static final List<StadiumFacility> facilities = new ArrayList<>();
-    private static final List<Booking> bookings = new ArrayList<>();
+    // Shared booking engine, restored from the snapshot and journal on startup
+    private StadiumManager manager;
+    // Rows of the facilities and bookings tables, kept up to date by the manager's change events
+    private TableModel tableModel;
     private Label statusLabel;
+    private Label pendingLabel;
+    // Bookings, cancellations and facility adds run here so the FX thread never waits on locks or fsyncs
+    private ExecutorService bookingExecutor;
+    private int pendingOperations; // only touched on the FX thread
     private AnimationPane contentPane;
-    private Timeline animationTimeline;
 
 
     @Override
@@ -33,6 +43,11 @@ public class StadiumBookingSystemFX extends Application {
         primaryStage.setTitle("Stadium Booking System");
         primaryStage.setMaximized(true);
 
+        // Restore facilities and bookings saved by earlier sessions
+        manager = openManager();
+        tableModel = new TableModel(manager);
+        bookingExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("booking-worker-", 0).factory());
+
         // Create the main layout
         BorderPane root = new BorderPane();
 
@@ -52,15 +67,34 @@ public class StadiumBookingSystemFX extends Application {
         Pane statusBar = createStatusBar();
         root.setBottom(statusBar);
 
-        // Start animation
-        startAnimation();
+        // Start animation; it pauses by itself while the window is minimized
+        contentPane.start();
+        Tooltip frameStats = new Tooltip();
+        frameStats.setOnShowing(e -> frameStats.setText(contentPane.getFrameStats()));
+        Tooltip.install(contentPane, frameStats);
 
         // Set scene and show stage
         Scene scene = new Scene(root);
+        // Any input keeps the animation at full frame rate for a while
+        scene.addEventFilter(InputEvent.ANY, e -> contentPane.markActive());
         primaryStage.setScene(scene);
         primaryStage.show();
     }
 
+    private StadiumManager openManager() {
+        try {
+            StadiumManager restored = StadiumManager.open(Paths.get(StadiumManager.JOURNAL_FILE),
+                    Paths.get(StadiumManager.SNAPSHOT_FILE));
+            restored.startCheckpoints(5, TimeUnit.MINUTES);
+            restored.startArchiving(Paths.get(StadiumManager.ARCHIVE_FILE), 1, 1, TimeUnit.HOURS);
+            return restored;
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Could not restore saved bookings: " + e.getMessage()
+                    + "\nChanges made in this session will not be saved.");
+            return new StadiumManager();
+        }
+    }
+
     private Pane createHeaderPanel() {
         Pane headerPanel = new Pane();
 
@@ -205,20 +239,19 @@ public class StadiumBookingSystemFX extends Application {
         statusLabel.setLayoutX(10);
         statusLabel.setLayoutY(10);
 
-        statusBar.getChildren().add(statusLabel);
+        // Number of operations still running in the background
+        pendingLabel = new Label();
+        pendingLabel.setTextFill(Color.WHITE);
+        pendingLabel.setFont(Font.font("Arial", 22));
+        pendingLabel.setLayoutY(10);
+        pendingLabel.layoutXProperty().bind(statusBar.widthProperty().subtract(pendingLabel.widthProperty()).subtract(20));
+
+        statusBar.getChildren().addAll(statusLabel, pendingLabel);
         statusBar.setPrefHeight(50);
 
         return statusBar;
     }
 
-    private void startAnimation() {
-        animationTimeline = new Timeline(
-                new KeyFrame(Duration.millis(30), event -> contentPane.updateAnimation())
-        );
-        animationTimeline.setCycleCount(Animation.INDEFINITE);
-        animationTimeline.play();
-    }
-
     private void showAddFacilityDialog(Stage owner) {
         Stage dialog = new Stage();
         dialog.initModality(Modality.APPLICATION_MODAL);
@@ -299,18 +332,20 @@ public class StadiumBookingSystemFX extends Application {
                 }
 
                 String type = typeComboBox.getValue();
-
-                if ("Seating Section".equals(type)) {
-                    String seatType = seatTypeComboBox.getValue();
-                    facilities.add(new StadiumFacility(name, capacity, type, seatType, false));
-                } else {
-                    boolean hasProjector = projectorCheckBox.isSelected();
-                    facilities.add(new StadiumFacility(name, capacity, type, "", hasProjector));
-                }
-
-                statusLabel.setText("Facility added successfully.");
-                showAlert(Alert.AlertType.INFORMATION, "Success", "Facility added successfully!");
-                dialog.close();
+                String seatType = "Seating Section".equals(type) ? seatTypeComboBox.getValue() : null;
+                boolean hasProjector = !"Seating Section".equals(type) && projectorCheckBox.isSelected();
+
+                saveButton.setDisable(true);
+                runInBackground(() -> manager.addFacility(name, capacity, seatType, hasProjector), added -> {
+                    saveButton.setDisable(false);
+                    if (!added) {
+                        showAlert(Alert.AlertType.ERROR, "Error", "A facility with this name already exists.");
+                        return;
+                    }
+                    statusLabel.setText("Facility added successfully.");
+                    showAlert(Alert.AlertType.INFORMATION, "Success", "Facility added successfully!");
+                    dialog.close();
+                }, () -> saveButton.setDisable(false));
 
             } catch (NumberFormatException ex) {
                 showAlert(Alert.AlertType.ERROR, "Error", "Capacity must be a valid number.");
@@ -336,7 +371,7 @@ public class StadiumBookingSystemFX extends Application {
     }
 
     private void showFacilitiesTable(Stage owner) {
-        if (facilities.isEmpty()) {
+        if (manager.getFacilitiesAsList().isEmpty()) {
             showAlert(Alert.AlertType.INFORMATION, "Information", "No facilities available.");
             return;
         }
@@ -381,30 +416,8 @@ public class StadiumBookingSystemFX extends Application {
 
         table.getColumns().addAll(nameCol, typeCol, capacityCol, infoCol, bookingsCol, availabilityCol);
 
-        // Populate table data
-        ObservableList<FacilityTableData> data = FXCollections.observableArrayList();
-        for (StadiumFacility facility : facilities) {
-            int currentBookings = getCurrentBookings(facility.getName());
-            int availability = facility.getCapacity() - currentBookings;
-
-            String additionalInfo;
-            if (facility.getType().equals("Seating Section")) {
-                additionalInfo = "Seat Type: " + facility.getSeatType();
-            } else {
-                additionalInfo = "Projector: " + (facility.hasProjector() ? "Yes" : "No");
-            }
-
-            data.add(new FacilityTableData(
-                    facility.getName(),
-                    facility.getType(),
-                    facility.getCapacity(),
-                    additionalInfo,
-                    currentBookings,
-                    availability
-            ));
-        }
-
-        table.setItems(data);
+        // The rows are live: bookings made or canceled while the table is open show up in place
+        table.setItems(tableModel.getFacilityRows());
 
         // Set row height and font
         table.setStyle("-fx-font-size: 16px;");
@@ -417,7 +430,7 @@ public class StadiumBookingSystemFX extends Application {
     }
 
     private void showBookingDialog(Stage owner) {
-        if (facilities.isEmpty()) {
+        if (manager.getFacilitiesAsList().isEmpty()) {
             showAlert(Alert.AlertType.ERROR, "Error", "No facilities available to book.");
             return;
         }
@@ -440,7 +453,7 @@ public class StadiumBookingSystemFX extends Application {
 
         ComboBox<String> facilityComboBox = new ComboBox<>();
         ObservableList<String> facilityNames = FXCollections.observableArrayList(
-                facilities.stream().map(StadiumFacility::getName).collect(Collectors.toList())
+                manager.getFacilitiesAsList().stream().map(StadiumFacility::getFacilityName).collect(Collectors.toList())
         );
         facilityComboBox.setItems(facilityNames);
         if (!facilityNames.isEmpty()) {
@@ -482,29 +495,25 @@ public class StadiumBookingSystemFX extends Application {
             }
 
             // Validate date format
-            if (!date.matches("^\\d{4}-\\d{2}-\\d{2}$")) {
+            long epochDay = BookingSlot.parseEpochDay(date);
+            if (epochDay == BookingSlot.INVALID) {
                 showAlert(Alert.AlertType.ERROR, "Error", "Invalid date format. Please use yyyy-MM-dd.");
                 return;
             }
 
             // Validate that the date is not in the past
-            try {
-                LocalDate today = LocalDate.now();
-                LocalDate enteredDate = LocalDate.parse(date);
-                if (enteredDate.isBefore(today)) {
-                    showAlert(Alert.AlertType.ERROR, "Error", "Cannot book for a past date. Please select a valid date.");
-                    return;
-                }
-            } catch (DateTimeParseException ex) {
-                showAlert(Alert.AlertType.ERROR, "Error", "Invalid date entered. Please use a valid yyyy-MM-dd format.");
+            if (epochDay < BookingSlot.today()) {
+                showAlert(Alert.AlertType.ERROR, "Error", "Cannot book for a past date. Please select a valid date.");
                 return;
             }
 
             // Validate time format
-            if (!time.matches("^([01]?\\d|2[0-3]):[0-5]\\d$")) {
+            int minuteOfDay = BookingSlot.parseMinuteOfDay(time);
+            if (minuteOfDay < 0) {
                 showAlert(Alert.AlertType.ERROR, "Error", "Invalid time format. Please use HH:mm.");
                 return;
             }
+            long slot = BookingSlot.pack(epochDay, minuteOfDay);
 
             // Validate booked units
             int bookedUnits;
@@ -518,29 +527,32 @@ public class StadiumBookingSystemFX extends Application {
                 return;
             }
 
-            // Check availability
-            int currentAvailability = getAvailability(facilityName);
-            if (bookedUnits > currentAvailability) {
-                showAlert(Alert.AlertType.ERROR, "Error", "Insufficient capacity. Available units: " + currentAvailability);
-                return;
-            }
-
-            // Check for duplicate bookings
-            boolean duplicateExists = bookings.stream()
-                    .anyMatch(b -> b.getFacilityName().equals(facilityName) &&
-                            b.getDate().equals(date) &&
-                            b.getTime().equals(time));
-
-            if (duplicateExists) {
-                showAlert(Alert.AlertType.ERROR, "Error", "A booking already exists for this facility at the specified date and time.");
-                return;
-            }
-
-            // Add booking
-            bookings.add(new Booking(facilityName, date, time, bookedUnits));
-            statusLabel.setText("Booking added successfully.");
-            showAlert(Alert.AlertType.INFORMATION, "Success", "Booking made successfully!");
-            dialog.close();
+            // Check capacity and duplicates, and add the booking, in one atomic step
+            bookButton.setDisable(true);
+            runInBackground(() -> manager.book(facilityName, slot, bookedUnits, ConferenceRoom.DEFAULT_BOOKING_MINUTES), status -> {
+                bookButton.setDisable(false);
+                switch (status) {
+                    case SUCCESS:
+                        statusLabel.setText("Booking added successfully.");
+                        showAlert(Alert.AlertType.INFORMATION, "Success", "Booking made successfully!");
+                        dialog.close();
+                        break;
+                    case INSUFFICIENT_CAPACITY:
+                        showAlert(Alert.AlertType.ERROR, "Error", "Insufficient capacity. Available units: " + manager.getAvailableUnits(facilityName));
+                        break;
+                    case CONFLICT:
+                        showAlert(Alert.AlertType.ERROR, "Error", "A booking already exists for this facility at the specified date and time.");
+                        break;
+                    case NOT_FOUND:
+                        showAlert(Alert.AlertType.ERROR, "Error", "Facility not found.");
+                        break;
+                    case PAST_DATE:
+                        showAlert(Alert.AlertType.ERROR, "Error", "Cannot book for a past date. Please select a valid date.");
+                        break;
+                    default:
+                        showAlert(Alert.AlertType.ERROR, "Error", "Invalid booking request.");
+                }
+            }, () -> bookButton.setDisable(false));
         });
 
         // Add components to grid
@@ -560,7 +572,7 @@ public class StadiumBookingSystemFX extends Application {
     }
 
     private void showBookingsTable(Stage owner) {
-        if (bookings.isEmpty()) {
+        if (Booking.bookings.isEmpty()) {
             showAlert(Alert.AlertType.INFORMATION, "Information", "No bookings available.");
             return;
         }
@@ -579,6 +591,10 @@ public class StadiumBookingSystemFX extends Application {
         TableView<Booking> table = new TableView<>();
 
         // Define columns
+        TableColumn<Booking, Long> idCol = new TableColumn<>("Confirmation #");
+        idCol.setCellValueFactory(new PropertyValueFactory<>("id"));
+        idCol.setPrefWidth(150);
+
         TableColumn<Booking, String> facilityCol = new TableColumn<>("Facility Name");
         facilityCol.setCellValueFactory(new PropertyValueFactory<>("facilityName"));
         facilityCol.setPrefWidth(200);
@@ -595,15 +611,45 @@ public class StadiumBookingSystemFX extends Application {
         unitsCol.setCellValueFactory(new PropertyValueFactory<>("bookedUnits"));
         unitsCol.setPrefWidth(150);
 
-        table.getColumns().addAll(facilityCol, dateCol, timeCol, unitsCol);
+        table.getColumns().addAll(idCol, facilityCol, dateCol, timeCol, unitsCol);
 
-        // Populate table data
-        ObservableList<Booking> data = FXCollections.observableArrayList(bookings);
-        table.setItems(data);
+        // The shared row list is not copied; the table only creates cells for the visible rows
+        table.setItems(tableModel.getBookingRows());
 
         // Set row height and font
         table.setStyle("-fx-font-size: 16px;");
 
+        // Day view: reads just that day's bookings from the date index, in time order
+        DatePicker dayPicker = new DatePicker();
+        dayPicker.setPromptText("Day");
+        ComboBox<String> facilityFilter = new ComboBox<>();
+        facilityFilter.getItems().add("All facilities");
+        for (StadiumFacility facility : manager.getFacilitiesAsList()) {
+            facilityFilter.getItems().add(facility.getFacilityName());
+        }
+        facilityFilter.setValue("All facilities");
+        Button showDayButton = new Button("Show Day");
+        Button showAllButton = new Button("Show All");
+        showDayButton.setOnAction(e -> {
+            LocalDate day = dayPicker.getValue();
+            if (day == null) {
+                showAlert(Alert.AlertType.ERROR, "Error", "Please choose a day.");
+                return;
+            }
+            String facilityName = facilityFilter.getValue();
+            Collection<Booking> dayBookings = facilityFilter.getSelectionModel().getSelectedIndex() <= 0
+                    ? manager.getBookingsOn(day) : manager.getBookingsOn(facilityName, day);
+            table.setItems(FXCollections.observableArrayList(dayBookings));
+        });
+        showAllButton.setOnAction(e -> {
+            dayPicker.setValue(null);
+            table.setItems(tableModel.getBookingRows());
+        });
+        HBox filterBar = new HBox(10, dayPicker, facilityFilter, showDayButton, showAllButton);
+        filterBar.setAlignment(Pos.CENTER_LEFT);
+        filterBar.setPadding(new Insets(0, 0, 10, 0));
+
+        borderPane.setTop(filterBar);
         borderPane.setCenter(table);
 
         Scene scene = new Scene(borderPane);
@@ -612,7 +658,7 @@ public class StadiumBookingSystemFX extends Application {
     }
 
     private void showCancelBookingDialog(Stage owner) {
-        if (bookings.isEmpty()) {
+        if (Booking.bookings.isEmpty()) {
             showAlert(Alert.AlertType.INFORMATION, "Information", "No bookings available to cancel.");
             return;
         }
@@ -633,10 +679,10 @@ public class StadiumBookingSystemFX extends Application {
         Label facilityLabel = new Label("Select Facility:");
         facilityLabel.setFont(Font.font("Arial", FontWeight.BOLD, 18));
 
-        // Get distinct facility names from bookings
-        List<String> distinctFacilities = bookings.stream()
-                .map(Booking::getFacilityName)
-                .distinct()
+        // Get the facilities that currently have bookings
+        List<String> distinctFacilities = manager.getFacilitiesAsList().stream()
+                .map(StadiumFacility::getFacilityName)
+                .filter(name -> manager.getBookedUnits(name) > 0)
                 .collect(Collectors.toList());
 
         ComboBox<String> facilityComboBox = new ComboBox<>(FXCollections.observableArrayList(distinctFacilities));
@@ -673,31 +719,29 @@ public class StadiumBookingSystemFX extends Application {
             }
 
             // Validate date format
-            if (!date.matches("^\\d{4}-\\d{2}-\\d{2}$")) {
+            if (BookingSlot.parseEpochDay(date) == BookingSlot.INVALID) {
                 showAlert(Alert.AlertType.ERROR, "Error", "Invalid date format. Please use yyyy-MM-dd.");
                 return;
             }
 
             // Validate time format
-            if (!time.matches("^([01]?\\d|2[0-3]):[0-5]\\d$")) {
+            if (BookingSlot.parseMinuteOfDay(time) < 0) {
                 showAlert(Alert.AlertType.ERROR, "Error", "Invalid time format. Please use HH:mm.");
                 return;
             }
 
             // Find and remove matching booking
-            boolean removed = bookings.removeIf(b ->
-                    b.getFacilityName().equals(facilityName) &&
-                            b.getDate().equals(date) &&
-                            b.getTime().equals(time)
-            );
-
-            if (removed) {
-                statusLabel.setText("Booking canceled successfully.");
-                showAlert(Alert.AlertType.INFORMATION, "Success", "Booking canceled successfully!");
-                dialog.close();
-            } else {
-                showAlert(Alert.AlertType.ERROR, "Error", "No matching booking found.");
-            }
+            cancelButton.setDisable(true);
+            runInBackground(() -> manager.cancelBooking(facilityName, date, time), removed -> {
+                cancelButton.setDisable(false);
+                if (removed) {
+                    statusLabel.setText("Booking canceled successfully.");
+                    showAlert(Alert.AlertType.INFORMATION, "Success", "Booking canceled successfully!");
+                    dialog.close();
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Error", "No matching booking found.");
+                }
+            }, () -> cancelButton.setDisable(false));
         });
 
         // Add components to grid
@@ -714,27 +758,37 @@ public class StadiumBookingSystemFX extends Application {
         dialog.show();
     }
 
-    private int getCurrentBookings(String facilityName) {
-        return bookings.stream()
-                .filter(b -> b.getFacilityName().equals(facilityName))
-                .mapToInt(Booking::getBookedUnits)
-                .sum();
+    // Runs the work on the booking executor and hands its result to onSuccess on the FX thread.
+    // If the work throws, an error is shown and onFailure runs instead.
+    private <T> void runInBackground(Callable<T> work, Consumer<T> onSuccess, Runnable onFailure) {
+        pendingOperations++;
+        updatePendingLabel();
+        bookingExecutor.execute(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception ex) {
+                Platform.runLater(() -> {
+                    finishOperation();
+                    onFailure.run();
+                    showAlert(Alert.AlertType.ERROR, "Error", "Operation failed: " + ex.getMessage());
+                });
+                return;
+            }
+            Platform.runLater(() -> {
+                finishOperation();
+                onSuccess.accept(result);
+            });
+        });
     }
 
-    private int getAvailability(String facilityName) {
-        StadiumFacility facility = facilities.stream()
-                .filter(f -> f.getName().equals(facilityName))
-                .findFirst()
-                .orElse(null);
-
-        if (facility == null) {
-            return 0;
-        }
-
-        int totalCapacity = facility.getCapacity();
-        int currentBookings = getCurrentBookings(facilityName);
+    private void finishOperation() {
+        pendingOperations--;
+        updatePendingLabel();
+    }
 
-        return totalCapacity - currentBookings;
+    private void updatePendingLabel() {
+        pendingLabel.setText(pendingOperations == 0 ? "" : "Pending operations: " + pendingOperations);
     }
 
     private void showAlert(Alert.AlertType alertType, String title, String content) {
@@ -747,8 +801,20 @@ public class StadiumBookingSystemFX extends Application {
 
     @Override
     public void stop() {
-        if (animationTimeline != null) {
-            animationTimeline.stop();
+        if (contentPane != null) {
+            contentPane.stop();
+        }
+        // Let operations already submitted finish before the journal is closed
+        bookingExecutor.shutdown();
+        try {
+            bookingExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            manager.close(); // final checkpoint, so the next start only loads the snapshot
+        } catch (IOException e) {
+            System.out.println("Could not save bookings: " + e.getMessage());
         }
     }
 
@@ -777,57 +843,192 @@ public class StadiumBookingSystemFX extends Application {
         public String getAdditionalInfo() { return additionalInfo; }
         public int getCurrentBookings() { return currentBookings; }
         public int getAvailability() { return availability; }
+
+        // Row for the facility's current state
+        static FacilityTableData of(StadiumFacility facility) {
+            String type;
+            String additionalInfo;
+            if (facility instanceof SeatingSection) {
+                type = "Seating Section";
+                additionalInfo = "Seat Type: " + ((SeatingSection) facility).getSeatType();
+            } else {
+                type = "Conference Room";
+                additionalInfo = "Projector: " + (((ConferenceRoom) facility).isHasProjector() ? "Yes" : "No");
+            }
+            return new FacilityTableData(
+                    facility.getFacilityName(),
+                    type,
+                    facility.getCapacity(),
+                    additionalInfo,
+                    facility.getCurrentBookings(),
+                    facility.getAvailableUnits()
+            );
+        }
     }
 
-    // Stadium Facility class
-    public static class StadiumFacility {
-        private final String name;
-        private final int capacity;
-        private final String type;
-        private final String seatType;
-        private final boolean hasProjector;
+    // Long-lived table rows, filled once from the manager and then patched by its change events.
+    // Events can come from any thread; they are applied on the FX thread in the order they arrive.
+    // Booking rows stay in the manager's time order (slot, then facility), so a row is found by
+    // binary search and inserted or removed in place.
+    private static class TableModel implements StadiumManager.ChangeListener {
+        private static final Comparator<Booking> TIME_ORDER = Comparator.comparingLong(Booking::getSlot)
+                .thenComparing(booking -> FacilityKeys.normalizedName(booking.getFacilityKey()));
+
+        private final StadiumManager manager;
+        private final ObservableList<FacilityTableData> facilityRows = FXCollections.observableArrayList();
+        private final ObservableList<Booking> bookingRows;
+        // Normalized facility name -> index of its row in facilityRows
+        private final Map<String, Integer> facilityIndexes = new HashMap<>();
+
+        TableModel(StadiumManager manager) {
+            this.manager = manager;
+            manager.addChangeListener(this);
+            for (StadiumFacility facility : manager.getFacilitiesAsList()) {
+                addFacilityRow(facility);
+            }
+            bookingRows = FXCollections.observableArrayList(manager.getBookingsAsString());
+        }
 
-        public StadiumFacility(String name, int capacity, String type, String seatType, boolean hasProjector) {
-            this.name = name;
-            this.capacity = capacity;
-            this.type = type;
-            this.seatType = seatType;
-            this.hasProjector = hasProjector;
+        ObservableList<FacilityTableData> getFacilityRows() {
+            return facilityRows;
         }
 
-        public String getName() { return name; }
-        public int getCapacity() { return capacity; }
-        public String getType() { return type; }
-        public String getSeatType() { return seatType; }
-        public boolean hasProjector() { return hasProjector; }
-    }
+        ObservableList<Booking> getBookingRows() {
+            return bookingRows;
+        }
 
-    // Booking class
-    public static class Booking {
-        private final String facilityName;
-        private final String date;
-        private final String time;
-        private final int bookedUnits;
+        @Override
+        public void facilityAdded(StadiumFacility facility) {
+            onFxThread(() -> addFacilityRow(facility));
+        }
 
-        public Booking(String facilityName, String date, String time, int bookedUnits) {
-            this.facilityName = facilityName;
-            this.date = date;
-            this.time = time;
-            this.bookedUnits = bookedUnits;
+        // Rare (its journal record was lost), so the indexes after it are simply rebuilt
+        @Override
+        public void facilityRemoved(StadiumFacility facility) {
+            onFxThread(() -> {
+                Integer index = facilityIndexes.remove(BookingStore.normalize(facility.getFacilityName()));
+                if (index != null) {
+                    facilityRows.remove((int) index);
+                    facilityIndexes.replaceAll((name, i) -> i > index ? i - 1 : i);
+                }
+            });
         }
 
-        public String getFacilityName() { return facilityName; }
-        public String getDate() { return date; }
-        public String getTime() { return time; }
-        public int getBookedUnits() { return bookedUnits; }
+        @Override
+        public void bookingAdded(Booking booking) {
+            onFxThread(() -> {
+                int index = Collections.binarySearch(bookingRows, booking, TIME_ORDER);
+                // A row with the same slot and facility is one whose removal hasn't arrived yet
+                bookingRows.add(index < 0 ? -index - 1 : index + 1, booking);
+                refreshFacilityRow(booking.getFacilityName());
+            });
+        }
+
+        @Override
+        public void bookingRemoved(Booking booking) {
+            onFxThread(() -> {
+                int index = indexOf(booking);
+                if (index >= 0) {
+                    bookingRows.remove(index);
+                }
+                refreshFacilityRow(booking.getFacilityName());
+            });
+        }
+
+        // A sweep can archive thousands of rows; drop them in one pass and one list change
+        @Override
+        public void bookingsArchived(List<Booking> bookings) {
+            Set<Booking> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+            archived.addAll(bookings);
+            Set<String> facilityNames = new LinkedHashSet<>();
+            for (Booking booking : bookings) {
+                facilityNames.add(booking.getFacilityName());
+            }
+            onFxThread(() -> {
+                bookingRows.removeIf(archived::contains);
+                for (String facilityName : facilityNames) {
+                    refreshFacilityRow(facilityName);
+                }
+            });
+        }
+
+        // Bookings compare by identity, so among rows with the same slot and facility the exact one is picked
+        private int indexOf(Booking booking) {
+            int found = Collections.binarySearch(bookingRows, booking, TIME_ORDER);
+            if (found < 0) {
+                return -1;
+            }
+            for (int i = found; i >= 0 && TIME_ORDER.compare(bookingRows.get(i), booking) == 0; i--) {
+                if (bookingRows.get(i) == booking) {
+                    return i;
+                }
+            }
+            for (int i = found + 1; i < bookingRows.size() && TIME_ORDER.compare(bookingRows.get(i), booking) == 0; i++) {
+                if (bookingRows.get(i) == booking) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void addFacilityRow(StadiumFacility facility) {
+            String key = BookingStore.normalize(facility.getFacilityName());
+            if (!facilityIndexes.containsKey(key)) {
+                facilityIndexes.put(key, facilityRows.size());
+                facilityRows.add(FacilityTableData.of(facility));
+            }
+        }
+
+        // Replaces just this facility's row, so the table sees a single-row update
+        private void refreshFacilityRow(String facilityName) {
+            Integer index = facilityIndexes.get(BookingStore.normalize(facilityName));
+            StadiumFacility facility = manager.getFacility(facilityName);
+            if (index != null && facility != null) {
+                facilityRows.set(index, FacilityTableData.of(facility));
+            }
+        }
+
+        private static void onFxThread(Runnable change) {
+            if (Platform.isFxApplicationThread()) {
+                change.run();
+            } else {
+                Platform.runLater(change);
+            }
+        }
     }
 
-    // AnimationPane class for animated background
+    // AnimationPane class for animated background.
+    // Drawn by a frame-budgeted AnimationTimer: a frame every 30 ms while the user is active, every
+    // 200 ms once the window is unfocused (e.g. behind a modal dialog) or idle, and none at all
+    // while the pane is hidden or the window is minimized. Each frame only clears and redraws the
+    // areas the balls moved out of and into.
     private static class AnimationPane extends Pane {
+        private static final long ACTIVE_FRAME_NANOS = 30_000_000L;
+        private static final long IDLE_FRAME_NANOS = 200_000_000L;
+        private static final long IDLE_AFTER_NANOS = 10_000_000_000L;
+        // Cap on how far the balls move in one frame, e.g. after a long pause
+        private static final double MAX_STEPS_PER_FRAME = 10;
+
         private final Canvas canvas;
         private final GraphicsContext gc;
         private final List<Ball> balls = new ArrayList<>();
         private final Random random = new Random();
+        private final AnimationTimer loop;
+        private final InvalidationListener windowStateListener = obs -> updateRunning();
+        private Window window;
+        private boolean started;
+        private boolean running;
+        private boolean fullRedraw = true;
+        private long lastFrame;
+        private long lastInput = System.nanoTime();
+
+        // Frame-time statistics
+        private long frames;
+        private long totalFrameNanos;
+        private long worstFrameNanos;
+        private long fpsWindowStart;
+        private int fpsWindowFrames;
+        private double framesPerSecond;
 
         public AnimationPane() {
             canvas = new Canvas(800, 600);
@@ -852,22 +1053,146 @@ public class StadiumBookingSystemFX extends Application {
 
             widthProperty().addListener((obs, oldVal, newVal) -> {
                 canvas.setWidth(newVal.doubleValue());
+                fullRedraw = true;
             });
 
             heightProperty().addListener((obs, oldVal, newVal) -> {
                 canvas.setHeight(newVal.doubleValue());
+                fullRedraw = true;
             });
 
             getChildren().add(canvas);
+
+            loop = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    long time = System.nanoTime();
+                    if (lastFrame == 0 || time - lastFrame >= frameInterval(time)) {
+                        renderFrame(time);
+                    }
+                }
+            };
+
+            // Run only while the pane can actually be seen
+            visibleProperty().addListener(obs -> updateRunning());
+            sceneProperty().addListener((obs, oldScene, newScene) -> {
+                if (oldScene != null) {
+                    oldScene.windowProperty().removeListener(windowStateListener);
+                }
+                if (newScene != null) {
+                    newScene.windowProperty().addListener(windowStateListener);
+                }
+                updateRunning();
+            });
+        }
+
+        public void start() {
+            started = true;
+            updateRunning();
+        }
+
+        public void stop() {
+            started = false;
+            updateRunning();
         }
 
-        public void updateAnimation() {
-            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        // Called on user input; keeps the full frame rate for the next few seconds
+        public void markActive() {
+            lastInput = System.nanoTime();
+        }
+
+        public long getFrameCount() {
+            return frames;
+        }
+
+        public double getAverageFrameMillis() {
+            return frames == 0 ? 0 : totalFrameNanos / (frames * 1_000_000.0);
+        }
+
+        public double getWorstFrameMillis() {
+            return worstFrameNanos / 1_000_000.0;
+        }
+
+        public double getFramesPerSecond() {
+            return running ? framesPerSecond : 0;
+        }
 
+        public String getFrameStats() {
+            return String.format("%d frames, %.1f fps, avg %.3f ms, worst %.3f ms per frame",
+                    getFrameCount(), getFramesPerSecond(), getAverageFrameMillis(), getWorstFrameMillis());
+        }
+
+        // Starts or stops the timer to match visibility, window state and start()/stop()
+        private void updateRunning() {
+            Window current = getScene() == null ? null : getScene().getWindow();
+            if (current != window) {
+                if (window != null) {
+                    window.showingProperty().removeListener(windowStateListener);
+                    window.focusedProperty().removeListener(windowStateListener);
+                    if (window instanceof Stage) {
+                        ((Stage) window).iconifiedProperty().removeListener(windowStateListener);
+                    }
+                }
+                window = current;
+                if (window != null) {
+                    window.showingProperty().addListener(windowStateListener);
+                    window.focusedProperty().addListener(windowStateListener);
+                    if (window instanceof Stage) {
+                        ((Stage) window).iconifiedProperty().addListener(windowStateListener);
+                    }
+                }
+            }
+            boolean shouldRun = started && isVisible() && window != null && window.isShowing()
+                    && !(window instanceof Stage && ((Stage) window).isIconified());
+            if (shouldRun && !running) {
+                running = true;
+                fullRedraw = true;
+                lastFrame = 0;
+                fpsWindowStart = System.nanoTime();
+                fpsWindowFrames = 0;
+                loop.start();
+            } else if (!shouldRun && running) {
+                running = false;
+                loop.stop();
+            }
+        }
+
+        private long frameInterval(long time) {
+            boolean idle = window == null || !window.isFocused() || time - lastInput > IDLE_AFTER_NANOS;
+            return idle ? IDLE_FRAME_NANOS : ACTIVE_FRAME_NANOS;
+        }
+
+        private void renderFrame(long time) {
+            // Move by elapsed time rather than per frame, so the speed is the same at any frame rate
+            double steps = lastFrame == 0 ? 1 : Math.min(MAX_STEPS_PER_FRAME, (time - lastFrame) / (double) ACTIVE_FRAME_NANOS);
+            lastFrame = time;
+            double width = canvas.getWidth();
+            double height = canvas.getHeight();
+
+            if (fullRedraw) {
+                gc.clearRect(0, 0, width, height);
+                fullRedraw = false;
+            } else {
+                // Each ball was drawn entirely inside its old bounds, so clearing those erases the last frame
+                for (Ball ball : balls) {
+                    ball.clear(gc);
+                }
+            }
             for (Ball ball : balls) {
-                ball.update(canvas.getWidth(), canvas.getHeight());
+                ball.update(width, height, steps);
                 ball.draw(gc);
             }
+
+            long frameNanos = System.nanoTime() - time;
+            frames++;
+            totalFrameNanos += frameNanos;
+            worstFrameNanos = Math.max(worstFrameNanos, frameNanos);
+            fpsWindowFrames++;
+            if (time - fpsWindowStart >= 1_000_000_000L) {
+                framesPerSecond = fpsWindowFrames * 1_000_000_000.0 / (time - fpsWindowStart);
+                fpsWindowStart = time;
+                fpsWindowFrames = 0;
+            }
         }
 
         private static class Ball {
@@ -877,6 +1202,9 @@ public class StadiumBookingSystemFX extends Application {
             private double dy;
             private final double radius;
             private final Color color;
+            // Where the ball was last drawn
+            private double drawnX;
+            private double drawnY;
 
             public Ball(double x, double y, double dx, double dy, double radius, Color color) {
                 this.x = x;
@@ -885,11 +1213,13 @@ public class StadiumBookingSystemFX extends Application {
                 this.dy = dy;
                 this.radius = radius;
                 this.color = color;
+                this.drawnX = x;
+                this.drawnY = y;
             }
 
-            public void update(double width, double height) {
-                x += dx;
-                y += dy;
+            public void update(double width, double height, double steps) {
+                x += dx * steps;
+                y += dy * steps;
 
                 if (x < radius || x > width - radius) {
                     dx = -dx;
@@ -905,6 +1235,13 @@ public class StadiumBookingSystemFX extends Application {
             public void draw(GraphicsContext gc) {
                 gc.setFill(color);
                 gc.fillOval(x - radius, y - radius, radius * 2, radius * 2);
+                drawnX = x;
+                drawnY = y;
+            }
+
+            // Clears the ball's last drawn bounds, with a pixel of margin for antialiasing
+            public void clear(GraphicsContext gc) {
+                gc.clearRect(drawnX - radius - 1, drawnY - radius - 1, radius * 2 + 2, radius * 2 + 2);
             }
         }
     }
@@ -1,47 +1,114 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class StadiumFacility {
     private final String facilityName;
+    private final int key; // See FacilityKeys; resolved once, so booking paths never look the name up again
     private final int capacity;
     public String name;
     public String type;
-    private int currentBookings; // Tracks how many units are booked
+    private final AtomicInteger currentBookings = new AtomicInteger(); // Tracks how many units are booked or held
+    private final AtomicInteger heldUnits = new AtomicInteger(); // The part of currentBookings that is only held
 
     public StadiumFacility(String facilityName, int capacity) {
 
         this.facilityName = facilityName;
+        this.key = FacilityKeys.of(facilityName);
         this.capacity = capacity;
-        this.currentBookings = 0; // Initially, no units are booked
     }
 
     public String getFacilityName() {
         return facilityName;
     }
 
+    public int getKey() {
+        return key;
+    }
+
     public int getCapacity() {
         return capacity;
     }
 
+    // Running total of taken units (booked or held), kept up to date by every reserve and release
     public int getCurrentBookings() {
-        return currentBookings;
+        return currentBookings.get();
     }
 
-    public void bookUnits(int units) {
-        if (currentBookings + units <= capacity) {
-            currentBookings += units;
-        } else
+    // Units set aside by seat holds that are neither confirmed nor released yet
+    public int getHeldUnits() {
+        return heldUnits.get();
+    }
+
+    public int getAvailableUnits() {
+        return capacity - currentBookings.get();
+    }
+
+    // Atomically reserves units; returns false instead of overselling when capacity is short
+    public boolean tryReserve(int units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException("Number of units must be positive.");
+        }
+        while (true) {
+            int booked = currentBookings.get();
+            if (booked > capacity - units) {
+                return false;
+            }
+            if (currentBookings.compareAndSet(booked, booked + units)) {
+                return true;
+            }
+        }
+    }
 
-        {
+    // Returns previously reserved units to the pool
+    public void release(int units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException("Number of units must be positive.");
+        }
+        while (true) {
+            int booked = currentBookings.get();
+            if (units > booked) {
+                throw new IllegalStateException("Cannot release more units than are booked!");
+            }
+            if (currentBookings.compareAndSet(booked, booked - units)) {
+                return;
+            }
+        }
+    }
+
+    // Takes units for a hold; they count as taken until the hold is confirmed or released
+    public boolean tryHold(int units) {
+        if (!tryReserve(units)) {
+            return false;
+        }
+        heldUnits.addAndGet(units);
+        return true;
+    }
+
+    // A confirmed hold keeps its units, now as booked ones
+    public void confirmHold(int units) {
+        heldUnits.addAndGet(-units);
+    }
+
+    // A released or expired hold gives its units back
+    public void releaseHold(int units) {
+        heldUnits.addAndGet(-units);
+        release(units);
+    }
+
+    public void bookUnits(int units) {
+        if (!tryReserve(units)) {
             throw new IllegalArgumentException("Booking exceeds facility capacity!");
         }
     }
 
+    // Advisory only: another thread may reserve in between, use tryReserve to actually book
     public boolean checkAvailability(int requestedUnits) {
-        return currentBookings + requestedUnits <= capacity;
+        return currentBookings.get() <= capacity - requestedUnits;
     }
 
     @Override
     public String toString() {
         return "Facility Name: " + facilityName + ", Capacity: " + capacity +
-                ", Current Bookings: " + currentBookings;
+                ", Current Bookings: " + currentBookings.get();
     }
 
     public String getName() {
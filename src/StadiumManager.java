@@ -1,9 +1,147 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+public class StadiumManager implements AutoCloseable {
+    // Default files used by the console and GUI applications
+    public static final String JOURNAL_FILE = "stadium.journal";
+    public static final String SNAPSHOT_FILE = "stadium.snapshot";
+    public static final String METRICS_FILE = "stadium-metrics.txt";
+    public static final String ARCHIVE_FILE = "stadium.archive";
+
+    public static final int DEFAULT_HOLD_MINUTES = 10;
+    // Holds expire within 100 ms of their time; one turn of the wheel covers about 100 seconds
+    private static final int HOLD_TICK_MILLIS = 100;
+    private static final int HOLD_WHEEL_BUCKETS = 1024;
+
+    private static final CompletableFuture<Void> NOT_JOURNALED = CompletableFuture.completedFuture(null);
+
+    private final FacilityRegistry facilities = new FacilityRegistry();
+    // Booking and cancel paths lock only the stripe of the facility they touch
+    private final FacilityLocks facilityLocks = new FacilityLocks();
+    // Write-ahead log of every change, or null for a purely in-memory manager
+    private final BookingJournal journal;
+    // Where checkpoints are written, or null if this manager doesn't checkpoint
+    private final Path snapshotFile;
+    // Runs periodic checkpoints and metrics dumps, created on first use
+    private ScheduledExecutorService scheduler;
+    private boolean checkpointsStarted;
+    private Path metricsFile;
+    private volatile BookingArchive archive;
+    // Pending seat holds by ID, and the wheel that expires them; the wheel is created on first use
+    private final Map<Long, SeatHold> holds = new ConcurrentHashMap<>();
+    private volatile TimingWheel<SeatHold> holdWheel;
+    // Held by checkpoints and archive sweeps, so a snapshot never sees a sweep half done
+    private final Object maintenanceLock = new Object();
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // Set on threads running inside deferDurability
+    private final ThreadLocal<Boolean> durabilityDeferred = ThreadLocal.withInitial(() -> false);
+
+    // Notified of every change, on the thread that made it and while the facility's stripe lock
+    // is held, so events for one facility arrive in order. Implementations must return quickly.
+    public interface ChangeListener {
+        void facilityAdded(StadiumFacility facility);
+
+        // Only for a facility whose journal record was lost, so it was never really added
+        default void facilityRemoved(StadiumFacility facility) {
+        }
+
+        void bookingAdded(Booking booking);
+
+        void bookingRemoved(Booking booking);
+
+        // Bookings moved to the archive in one sweep, of any number of facilities. Sent once the
+        // sweep has been through every facility, so a listener can drop them all in one pass.
+        default void bookingsArchived(List<Booking> bookings) {
+            for (Booking booking : bookings) {
+                bookingRemoved(booking);
+            }
+        }
+    }
+
+    public StadiumManager() {
+        this.journal = null;
+        this.snapshotFile = null;
+    }
+
+    // Rebuilds the state recorded in the journal, then logs every further change to it
+    public StadiumManager(BookingJournal journal) throws IOException {
+        this(journal, null);
+    }
+
+    // Restores the latest snapshot (if any), replays only the journal records written after it,
+    // then logs every further change to the journal
+    public StadiumManager(BookingJournal journal, Path snapshotFile) throws IOException {
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+        BookingJournal.Listener restore = new BookingJournal.Listener() {
+            @Override
+            public void facilityAdded(StadiumFacility facility) {
+                facilities.add(facility);
+            }
+
+            @Override
+            public void booked(long id, String facilityName, long slot, int bookedUnits, int durationMinutes,
+                               int firstSeat) {
+                StadiumFacility facility = facilities.find(facilityName);
+                if (facility != null && facility.tryReserve(bookedUnits)) {
+                    BookingIds.reserveUpTo(id);
+                    if (restoreSeated(id, facility, slot, bookedUnits, durationMinutes, firstSeat) == null) {
+                        facility.release(bookedUnits);
+                    }
+                }
+            }
+
+            @Override
+            public void amended(long id, String facilityName, long oldSlot, long slot, int bookedUnits, int durationMinutes,
+                                int firstSeat) {
+                canceled(facilityName, oldSlot);
+                booked(id, facilityName, slot, bookedUnits, durationMinutes, firstSeat);
+            }
+
+            @Override
+            public void canceled(String facilityName, long slot) {
+                StadiumFacility facility = facilities.find(facilityName);
+                if (facility != null) {
+                    removeBooking(facility, slot);
+                }
+            }
+
+            @Override
+            public void archived(long cutoffSlot) {
+                for (StadiumFacility facility : facilities.asList()) {
+                    removeBefore(facility, cutoffSlot);
+                }
+            }
+        };
+        long journalPosition = snapshotFile == null ? 0 : BookingSnapshot.load(snapshotFile, restore);
+        journal.replay(restore, journalPosition);
+    }
+
+    // Opens the journal and snapshot files and restores the state they hold
+    public static StadiumManager open(Path journalFile, Path snapshotFile) throws IOException {
+        return new StadiumManager(BookingJournal.open(journalFile), snapshotFile);
+    }
 
-public class StadiumManager {
-    private final List<StadiumFacility> facilities = new ArrayList<>();
     // Add a facility (Seating Section or Conference Room)
     public void addFacility(Scanner scanner) {
         System.out.println("Choose Facility Type:");
@@ -18,6 +156,10 @@ public class StadiumManager {
             System.out.println("Invalid name. Please enter a valid name.");
             return;
         }
+        if (facilities.contains(name)) {
+            System.out.println("A facility with this name already exists.");
+            return;
+        }
         System.out.print("Enter facility capacity: ");
         int capacity = scanner.nextInt();
         if (capacity <= 0) {
@@ -30,7 +172,14 @@ public class StadiumManager {
         if (choice == 1) {
             System.out.print("Enter seat type (VIP/Regular): ");
             String seatType = scanner.nextLine();
-            facility = new SeatingSection(name, capacity, seatType);
+            System.out.print("Enter seats per row: ");
+            int seatsPerRow = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+            if (seatsPerRow <= 0) {
+                System.out.println("Invalid number of seats per row.");
+                return;
+            }
+            facility = new SeatingSection(name, capacity, seatType, seatsPerRow);
         } else if (choice == 2) {
             System.out.print("Is a projector available? (true/false): ");
             boolean projectorAvailable = scanner.nextBoolean();
@@ -41,7 +190,10 @@ public class StadiumManager {
             return;
         }
 
-        facilities.add(facility);
+        if (!register(facility)) {
+            System.out.println("A facility with this name already exists.");
+            return;
+        }
         System.out.println("Facility added successfully!");
     }
 
@@ -50,7 +202,7 @@ public class StadiumManager {
         if (facilities.isEmpty()) {
             System.out.println("No facilities available.");
         } else {
-            for (StadiumFacility facility : facilities) {
+            for (StadiumFacility facility : facilities.asList()) {
                 System.out.println(facility);
             }
         }
@@ -63,56 +215,94 @@ public class StadiumManager {
 
         System.out.print("Enter booking date (yyyy-MM-dd): ");
         String bookingDate = scanner.nextLine();
-        if (!bookingDate.matches("^\\d{4}-\\d{2}-\\d{2}$")) {
+        long epochDay = BookingSlot.parseEpochDay(bookingDate);
+        if (epochDay == BookingSlot.INVALID) {
             System.out.println("Invalid date format. Please use yyyy-MM-dd.");
             return;
         }
 
         // Validate that the date is not in the past
-        java.time.LocalDate today = java.time.LocalDate.now();
-        java.time.LocalDate enteredDate = java.time.LocalDate.parse(bookingDate);
-        if (enteredDate.isBefore(today)) {
+        if (epochDay < BookingSlot.today()) {
             System.out.println("Cannot book for a past date. Please select a valid date.");
             return;
         }
 
         System.out.print("Enter booking time (HH:mm): ");
         String bookingTime = scanner.nextLine();
-        if (!bookingTime.matches("^([01]?\\d|2[0-3]):[0-5]\\d$")) {
+        int minuteOfDay = BookingSlot.parseMinuteOfDay(bookingTime);
+        if (minuteOfDay < 0) {
             System.out.println("Invalid time format. Please use HH:mm.");
             return;
         }
+        long slot = BookingSlot.pack(epochDay, minuteOfDay);
 
-        for (StadiumFacility facility : facilities) {
-            if (facility.getFacilityName().equalsIgnoreCase(facilityName)) {
-                System.out.print("Enter number of units to book: ");
-                int units = scanner.nextInt();
-                scanner.nextLine(); // Consume newline
+        StadiumFacility facility = facilities.find(facilityName);
+        if (facility == null) {
+            System.out.println("Facility not found.");
+            return;
+        }
+        facilityName = facility.getFacilityName();
 
-                if (units <= 0) {
-                    System.out.println("Invalid number of booked units");
-                    return;
-                }
+        System.out.print("Enter number of units to book: ");
+        int units = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
 
-                if (facility.checkAvailability(units)) {
-                    facility.bookUnits(units);
-                    if (Booking.isAvailable(facilityName, bookingDate, bookingTime)) {
-                        Booking.makeBooking(facilityName, bookingDate, bookingTime); // Add booking with date and time
-                        return;
-                    } else {
-                        System.out.println("Booking failed. Facility not available for the selected date and time.");
-                    }
-                } else {
-                    System.out.println("Booking cannot proceed. Insufficient capacity.");
-                }
+        if (units <= 0) {
+            System.out.println("Invalid number of booked units");
+            return;
+        }
+
+        // Conference rooms are booked for a time interval, everything else for its start slot
+        int durationMinutes = 0;
+        if (facility instanceof ConferenceRoom) {
+            System.out.print("Enter duration in minutes: ");
+            durationMinutes = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+            if (!isValidDuration(durationMinutes)) {
+                System.out.println("Invalid duration. Please enter between 1 and " + BookingSlot.MINUTES_PER_DAY + " minutes.");
                 return;
             }
         }
-        System.out.println("Facility not found.");
+
+        // Add booking with date, time, units and duration
+        BookingResult result = placeBooking(facilityName, slot, units, durationMinutes);
+        BookingStatus status = result.getStatus();
+        if (status == BookingStatus.SUCCESS) {
+            System.out.println("Booking made successfully for " + facilityName + " on "
+                    + bookingDate + " at " + BookingSlot.formatTime(slot) + "! Confirmation number: "
+                    + result.getBooking().getId());
+            String seats = describeSeats(result.getBooking());
+            if (seats != null) {
+                System.out.println("Seats: " + seats);
+            }
+        } else if (status == BookingStatus.INSUFFICIENT_CAPACITY) {
+            System.out.println("Booking cannot proceed. Insufficient capacity.");
+        } else {
+            System.out.println("Booking failed. Facility not available for the selected date and time.");
+        }
     }
 
     // Cancel a booking
     public void cancelBooking(Scanner scanner) {
+        System.out.print("Enter confirmation number (or leave blank to give facility, date and time): ");
+        String confirmation = scanner.nextLine().trim();
+        if (!confirmation.isEmpty()) {
+            long id;
+            try {
+                id = Long.parseLong(confirmation);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid confirmation number.");
+                return;
+            }
+            Booking removed = cancel(id);
+            if (removed != null) {
+                System.out.println("Booking canceled successfully: " + removed);
+            } else {
+                System.out.println("Booking not found.");
+            }
+            return;
+        }
+
         System.out.print("Enter facility name: ");
         String facilityName = scanner.nextLine();
 
@@ -122,8 +312,16 @@ public class StadiumManager {
         System.out.print("Enter booking time (HH:mm): ");
         String bookingTime = scanner.nextLine();
 
-        boolean isCanceled = Booking.cancelBooking(facilityName, bookingDate, bookingTime);
-        if (!isCanceled) {
+        long slot = BookingSlot.parse(bookingDate, bookingTime);
+        if (slot == BookingSlot.INVALID) {
+            System.out.println("Invalid date or time format. Please use yyyy-MM-dd and HH:mm.");
+            return;
+        }
+
+        if (cancel(facilityName, slot) != null) {
+            System.out.println("Booking canceled successfully for " + facilityName + " on "
+                    + bookingDate + " at " + BookingSlot.formatTime(slot) + "!");
+        } else {
             System.out.println("Booking not found.");
         }
     }
@@ -134,20 +332,95 @@ public class StadiumManager {
         Booking.viewBookings().forEach(System.out::println); // Displays all bookings with date and time
     }
 
-    // GUI functionality for adding facilities
-    public void addFacility(String name, int capacity, String seatType, boolean hasProjector) {
+    // GUI functionality for adding facilities, returns false if the name is already taken
+    public boolean addFacility(String name, int capacity, String seatType, boolean hasProjector) {
         StadiumFacility facility;
         if (seatType != null && !seatType.isEmpty()) {
             facility = new SeatingSection(name, capacity, seatType);
         } else {
             facility = new ConferenceRoom(name, capacity, hasProjector);
         }
-        facilities.add(facility);
+        return register(facility);
+    }
+
+    public boolean addSeatingSection(String name, int capacity, String seatType, int seatsPerRow) {
+        return register(new SeatingSection(name, capacity, seatType, seatsPerRow));
+    }
+
+    // Registers a new facility and journals it; returns false if the name is already taken.
+    // Runs under the facility's stripe lock so a checkpoint never sees it half-registered.
+    private boolean register(StadiumFacility facility) {
+        long start = System.nanoTime();
+        boolean added = addAndJournal(facility);
+        Booking.metrics.record(BookingMetrics.Operation.ADD_FACILITY, added ? BookingStatus.SUCCESS : BookingStatus.CONFLICT, start);
+        return added;
+    }
+
+    private boolean addAndJournal(StadiumFacility facility) {
+        CompletableFuture<Void> durable = NOT_JOURNALED;
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            if (!facilities.add(facility)) {
+                return false;
+            }
+            for (ChangeListener listener : changeListeners) {
+                listener.facilityAdded(facility);
+            }
+            if (journal != null) {
+                durable = journal.logFacilityAdded(facility, () -> unregister(facility));
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(durable);
+        return true;
+    }
+
+    // Undoes addAndJournal when its journal record is lost
+    private void unregister(StadiumFacility facility) {
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            if (facilities.remove(facility)) {
+                for (ChangeListener listener : changeListeners) {
+                    listener.facilityRemoved(facility);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Get all facilities as a list for GUI
     public List<StadiumFacility> getFacilitiesAsList() {
-        return facilities;
+        return facilities.asList();
+    }
+
+    // Look up a facility by name (ignoring case) in constant time
+    public StadiumFacility getFacility(String facilityName) {
+        return facilities.find(facilityName);
+    }
+
+    // Units currently booked on a facility, or 0 if there is no such facility
+    public int getBookedUnits(String facilityName) {
+        StadiumFacility facility = facilities.find(facilityName);
+        return facility == null ? 0 : facility.getCurrentBookings();
+    }
+
+    // Ticket-style seats of a booking, e.g. "Row 3, Seats 5-10", or null if it has none
+    public String describeSeats(Booking booking) {
+        StadiumFacility facility = facilities.find(booking.getFacilityKey());
+        if (!booking.hasSeats() || !(facility instanceof SeatingSection)) {
+            return null;
+        }
+        return ((SeatingSection) facility).describeSeats(booking.getFirstSeat(), booking.getBookedUnits());
+    }
+
+    // Units still free on a facility, or 0 if there is no such facility
+    public int getAvailableUnits(String facilityName) {
+        StadiumFacility facility = facilities.find(facilityName);
+        return facility == null ? 0 : facility.getAvailableUnits();
     }
 
     // Get facilities as a formatted string for the GUI
@@ -156,40 +429,320 @@ public class StadiumManager {
             return "No facilities available.";
         }
         StringBuilder sb = new StringBuilder();
-        for (StadiumFacility facility : facilities) {
+        for (StadiumFacility facility : facilities.asList()) {
             sb.append(facility).append("\n");
         }
         return sb.toString();
     }
 
-    // Make a booking (GUI method)
+    // Make a booking (GUI method); conference rooms are booked for their default meeting length
     public boolean makeBooking(String facilityName, String bookingDate, String bookingTime) {
-        for (StadiumFacility facility : facilities) {
-            if (facility.getFacilityName().equalsIgnoreCase(facilityName)) {
-                if (Booking.isAvailable(facilityName, bookingDate, bookingTime)) {
-                    Booking.makeBooking(facilityName, bookingDate, bookingTime);
+        return makeBooking(facilityName, bookingDate, bookingTime, ConferenceRoom.DEFAULT_BOOKING_MINUTES);
+    }
+
+    // Make a booking with an explicit meeting length, which only applies to conference rooms
+    public boolean makeBooking(String facilityName, String bookingDate, String bookingTime, int durationMinutes) {
+        StadiumFacility facility = facilities.find(facilityName);
+        if (facility == null) {
+            System.out.println("Facility not found.");
+            return false;
+        }
+        if (!(facility instanceof ConferenceRoom)) {
+            durationMinutes = 0;
+        } else if (!isValidDuration(durationMinutes)) {
+            System.out.println("Invalid duration. Please enter between 1 and " + BookingSlot.MINUTES_PER_DAY + " minutes.");
+            return false;
+        }
+        long epochDay = BookingSlot.parseEpochDay(bookingDate);
+        int minuteOfDay = BookingSlot.parseMinuteOfDay(bookingTime);
+        if (epochDay == BookingSlot.INVALID || minuteOfDay < 0) {
+            System.out.println("Invalid date or time format. Please use yyyy-MM-dd and HH:mm.");
+            return false;
+        }
+        if (epochDay < BookingSlot.today()) {
+            System.out.println("Cannot book for a past date. Please select a valid date.");
+            return false;
+        }
+        long slot = BookingSlot.pack(epochDay, minuteOfDay);
+
+        // A GUI booking holds one unit of the facility's capacity
+        BookingStatus status = book(facilityName, slot, 1, durationMinutes);
+        if (status == BookingStatus.INSUFFICIENT_CAPACITY) {
+            System.out.println("Booking cannot proceed. Insufficient capacity.");
+            return false;
+        } else if (status != BookingStatus.SUCCESS) {
+            System.out.println("Booking failed. Facility not available for the selected date and time.");
+            return false;
+        }
+
+        int bookedUnits = facility.getCurrentBookings();
+        System.out.println("Booking successful! Total booked units for " + facilityName + ": " + bookedUnits);
+        return true;
+    }
 
-                    int bookedUnits = Booking.getBookedUnits(facilityName);
-                    System.out.println("Booking successful! Total booked units for " + facilityName + ": " + bookedUnits);
-                    return true;
-                } else {
-                    System.out.println("Booking failed. Facility not available for the selected date and time.");
-                    return false;
+    // Core booking operation shared by the console and GUI paths; prints nothing. Reserves the units
+    // on the facility and records the booking under the facility's stripe lock, then waits for the
+    // journal outside the lock, so other bookings for the facility can join the same fsync batch.
+    // The duration only applies to conference rooms and is ignored for other facilities.
+    public BookingStatus book(String facilityName, long slot, int units, int durationMinutes) {
+        return placeBooking(facilityName, slot, units, durationMinutes).getStatus();
+    }
+
+    // Same as book, but also hands back the booking that was made
+    public BookingResult placeBooking(String facilityName, long slot, int units, int durationMinutes) {
+        return placeBooking(0, facilityName, slot, units, durationMinutes);
+    }
+
+    // Books under a given confirmation number, e.g. one carried over from an export; 0 draws a new
+    // one. An ID that is already in use makes the booking a CONFLICT.
+    public BookingResult placeBooking(long id, String facilityName, long slot, int units, int durationMinutes) {
+        long start = System.nanoTime();
+        BookingResult result = reserveAndRecord(id, facilityName, slot, units, durationMinutes);
+        Booking.metrics.record(BookingMetrics.Operation.BOOK, result.getStatus(), start);
+        return result;
+    }
+
+    private BookingResult reserveAndRecord(long id, String facilityName, long slot, int units, int durationMinutes) {
+        StadiumFacility facility = facilities.find(facilityName);
+        if (!(facility instanceof ConferenceRoom)) {
+            durationMinutes = 0;
+        }
+        BookingStatus invalid = validate(facility, slot, units, durationMinutes);
+        if (invalid != null) {
+            return BookingResult.failure(invalid);
+        }
+
+        CompletableFuture<Void> durable;
+        Booking booking;
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            if (!facility.tryReserve(units)) {
+                return BookingResult.failure(BookingStatus.INSUFFICIENT_CAPACITY);
+            }
+            if (id != 0) {
+                BookingIds.reserveUpTo(id);
+            }
+            booking = createSeated(id, facility, slot, units, durationMinutes);
+            if (booking == null) {
+                facility.release(units); // Give the reserved units back
+                return BookingResult.failure(BookingStatus.CONFLICT);
+            }
+            fireBookingAdded(booking);
+            durable = journalBooking(booking);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(durable);
+        return BookingResult.success(booking);
+    }
+
+    // Books every request or none of them. The whole batch is validated first, then the stripe
+    // locks of all its facilities are taken in index order (so batches never deadlock each other
+    // or a checkpoint), each facility's units are reserved once for the batch, the bookings are
+    // recorded and the batch is journaled as a single record. Returns one status per request, in
+    // request order; if any item fails, everything already applied is undone and the other valid
+    // items report ROLLED_BACK.
+    public List<BookingStatus> bookBatch(List<BookingRequest> requests) {
+        long start = System.nanoTime();
+        List<BookingStatus> statuses = reserveAndRecordBatch(requests);
+        // The batch as a whole is counted under the first item that made it fail
+        BookingStatus outcome = BookingStatus.SUCCESS;
+        for (BookingStatus status : statuses) {
+            if (status != BookingStatus.SUCCESS && status != BookingStatus.ROLLED_BACK) {
+                outcome = status;
+                break;
+            }
+        }
+        Booking.metrics.record(BookingMetrics.Operation.BATCH_BOOK, outcome, start);
+        return statuses;
+    }
+
+    private List<BookingStatus> reserveAndRecordBatch(List<BookingRequest> requests) {
+        int count = requests.size();
+        BookingStatus[] statuses = new BookingStatus[count];
+        StadiumFacility[] targets = new StadiumFacility[count];
+        List<BookingRequest> accepted = new ArrayList<>(count);
+        boolean failed = false;
+        for (int i = 0; i < count; i++) {
+            BookingRequest request = requests.get(i);
+            StadiumFacility facility = facilities.find(request.getFacilityName());
+            int durationMinutes = facility instanceof ConferenceRoom ? request.getDurationMinutes() : 0;
+            statuses[i] = validate(facility, request.getSlot(), request.getUnits(), durationMinutes);
+            if (statuses[i] != null) {
+                failed = true;
+                continue;
+            }
+            targets[i] = facility;
+            accepted.add(new BookingRequest(facility.getFacilityName(), request.getSlot(), request.getUnits(), durationMinutes));
+        }
+        if (failed || count == 0) {
+            return finishBatch(statuses);
+        }
+
+        // Units per facility, so each facility's capacity is checked and reserved only once
+        Map<StadiumFacility, Integer> unitsByFacility = new LinkedHashMap<>();
+        int[] stripes = new int[count];
+        for (int i = 0; i < count; i++) {
+            unitsByFacility.merge(targets[i], accepted.get(i).getUnits(), Integer::sum);
+            stripes[i] = facilityLocks.stripeFor(targets[i].getKey());
+        }
+        stripes = Arrays.stream(stripes).sorted().distinct().toArray();
+
+        CompletableFuture<Void> durable = NOT_JOURNALED;
+        List<StadiumFacility> reserved = new ArrayList<>();
+        Booking[] created = new Booking[count];
+        int added = 0;
+        for (int stripe : stripes) {
+            facilityLocks.lockAt(stripe).lock();
+        }
+        try {
+            for (Map.Entry<StadiumFacility, Integer> entry : unitsByFacility.entrySet()) {
+                if (!entry.getKey().tryReserve(entry.getValue())) {
+                    for (int i = 0; i < count; i++) {
+                        if (targets[i] == entry.getKey()) {
+                            statuses[i] = BookingStatus.INSUFFICIENT_CAPACITY;
+                        }
+                    }
+                    failed = true;
+                    break;
+                }
+                reserved.add(entry.getKey());
+            }
+            // Bookings are added in request order, so two items of the batch also conflict with each other
+            for (; !failed && added < count; added++) {
+                BookingRequest request = accepted.get(added);
+                created[added] = createSeated(0, targets[added], request.getSlot(), request.getUnits(), request.getDurationMinutes());
+                if (created[added] == null) {
+                    statuses[added] = BookingStatus.CONFLICT;
+                    failed = true;
+                    break;
+                }
+            }
+            if (failed) {
+                for (int i = 0; i < added; i++) {
+                    unstore(targets[i], accepted.get(i).getSlot());
+                }
+                for (StadiumFacility facility : reserved) {
+                    facility.release(unitsByFacility.get(facility));
+                }
+            } else {
+                Arrays.fill(statuses, BookingStatus.SUCCESS);
+                for (Booking booking : created) {
+                    fireBookingAdded(booking);
                 }
+                if (journal != null) {
+                    List<Booking> batch = Arrays.asList(created);
+                    durable = journal.logBookings(batch, () -> {
+                        for (Booking booking : batch) {
+                            unbook(booking);
+                        }
+                    });
+                }
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                facilityLocks.lockAt(stripes[i]).unlock();
+            }
+        }
+        awaitDurable(durable);
+        return finishBatch(statuses);
+    }
+
+    // Items that didn't fail themselves were rolled back along with the rest of their batch
+    private static List<BookingStatus> finishBatch(BookingStatus[] statuses) {
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == null) {
+                statuses[i] = BookingStatus.ROLLED_BACK;
             }
         }
-        System.out.println("Facility not found.");
-        return false;
+        return Arrays.asList(statuses);
+    }
+
+    // Returns why a booking request is invalid, or null if it may be attempted
+    private static BookingStatus validate(StadiumFacility facility, long slot, int units, int durationMinutes) {
+        if (facility == null) {
+            return BookingStatus.NOT_FOUND;
+        }
+        if (facility instanceof ConferenceRoom && !isValidDuration(durationMinutes)) {
+            return BookingStatus.INVALID_REQUEST;
+        }
+        if (units <= 0) {
+            return BookingStatus.INVALID_REQUEST;
+        }
+        if (BookingSlot.epochDay(slot) < BookingSlot.today()) {
+            return BookingStatus.PAST_DATE;
+        }
+        return null;
+    }
+
+    private static boolean isValidDuration(int durationMinutes) {
+        return durationMinutes > 0 && durationMinutes <= BookingSlot.MINUTES_PER_DAY;
     }
 
     // Get all bookings as a formatted string for GUI
     public List<Booking> getBookingsAsString() {
-        return Booking.bookings;
+        return new ArrayList<>(Booking.bookings.inTimeOrder());
+    }
+
+    // Bookings of all facilities with fromSlot <= slot < toSlot, in (date, time) order. The result is
+    // a live view over the date index, so reports only touch the bookings in the range.
+    public Collection<Booking> getBookingsBetween(long fromSlot, long toSlot) {
+        return Booking.bookings.between(fromSlot, toSlot);
+    }
+
+    public Collection<Booking> getBookingsBetween(String facilityName, long fromSlot, long toSlot) {
+        return Booking.bookings.between(facilityName, fromSlot, toSlot);
+    }
+
+    // Everything booked on the day, in time order
+    public Collection<Booking> getBookingsOn(LocalDate date) {
+        long day = date.toEpochDay();
+        return getBookingsBetween(BookingSlot.pack(day, 0), BookingSlot.pack(day + 1, 0));
+    }
+
+    public Collection<Booking> getBookingsOn(String facilityName, LocalDate date) {
+        long day = date.toEpochDay();
+        return getBookingsBetween(facilityName, BookingSlot.pack(day, 0), BookingSlot.pack(day + 1, 0));
+    }
+
+    // Earliest slot at or after fromSlot where the facility can take a booking of the given length
+    // (conference rooms; other facilities just need the slot itself to be free). Walks the facility's
+    // bookings from the one before fromSlot until a gap is big enough, so it costs O(log n + k) for
+    // the k bookings in the way. Returns BookingSlot.INVALID if there is no such facility.
+    public long findNextFreeSlot(String facilityName, long fromSlot, int durationMinutes) {
+        StadiumFacility facility = facilities.find(facilityName);
+        if (facility == null) {
+            return BookingSlot.INVALID;
+        }
+        if (!(facility instanceof ConferenceRoom)) {
+            durationMinutes = 0;
+        }
+        long candidate = fromSlot;
+        // Bookings never overlap, so only the last one starting before fromSlot can still be running
+        Booking before = Booking.bookings.floor(facility.getKey(), fromSlot);
+        for (Booking booking : Booking.bookings.from(facility.getKey(), before == null ? fromSlot : before.getSlot())) {
+            long start = OccupancyCalendar.blockedFrom(booking.getSlot(), booking.getDurationMinutes());
+            if (start >= OccupancyCalendar.blockedUntil(candidate, durationMinutes)) {
+                break; // the gap before this booking fits
+            }
+            long end = OccupancyCalendar.blockedUntil(booking.getSlot(), booking.getDurationMinutes());
+            if (end > OccupancyCalendar.blockedFrom(candidate, durationMinutes)) {
+                candidate = Math.max(candidate, end);
+            }
+        }
+        return candidate;
     }
 
     // Cancel a booking (GUI method)
     public boolean cancelBooking(String facilityName, String bookingDate, String bookingTime) {
-        boolean success = Booking.cancelBooking(facilityName, bookingDate, bookingTime);
+        long slot = BookingSlot.parse(bookingDate, bookingTime);
+        if (slot == BookingSlot.INVALID) {
+            System.out.println("Invalid date or time format. Please use yyyy-MM-dd and HH:mm.");
+            return false;
+        }
+
+        boolean success = cancel(facilityName, slot) != null;
         if (success) {
             System.out.println("Booking canceled successfully for " + facilityName + " on " + bookingDate + " at " + bookingTime + "!");
         } else {
@@ -198,18 +751,720 @@ public class StadiumManager {
         return success;
     }
 
-    // Inside the manager class
-    public boolean cancelBookingById(String bookingID) {
-        // Simulate finding the booking by ID and canceling it.
-        // Here, I assume we have a list of bookings, and we're removing the one with the matching ID.
+    // Removes a booking under its facility lock, returns its units to the facility and journals
+    // the cancellation; prints nothing. Returns the removed booking, or null if there was none.
+    public Booking cancel(String facilityName, long slot) {
+        long start = System.nanoTime();
+        Booking removed = removeAndJournal(facilities.find(facilityName), slot, null);
+        Booking.metrics.record(BookingMetrics.Operation.CANCEL, removed != null ? BookingStatus.SUCCESS : BookingStatus.NOT_FOUND, start);
+        return removed;
+    }
+
+    // Cancels the booking with the given confirmation number, found in O(1) through the ID index;
+    // returns it, or null if there is no such booking
+    public Booking cancel(long bookingId) {
+        long start = System.nanoTime();
+        Booking booking = Booking.bookings.get(bookingId);
+        Booking removed = booking == null ? null
+                : removeAndJournal(facilities.find(booking.getFacilityKey()), booking.getSlot(), booking);
+        Booking.metrics.record(BookingMetrics.Operation.CANCEL, removed != null ? BookingStatus.SUCCESS : BookingStatus.NOT_FOUND, start);
+        return removed;
+    }
+
+    // The booking with the given confirmation number, or null
+    public Booking getBooking(long bookingId) {
+        return Booking.bookings.get(bookingId);
+    }
+
+    // Moves or resizes a booking, keeping its confirmation number: the old booking is released and
+    // the new slot, units and duration are booked in its place under the facility's stripe lock.
+    // If the new booking cannot be made the old one stays as it was. The duration only applies to
+    // conference rooms.
+    public BookingStatus amend(long bookingId, long slot, int units, int durationMinutes) {
+        long start = System.nanoTime();
+        BookingStatus status = amendAndJournal(bookingId, slot, units, durationMinutes);
+        Booking.metrics.record(BookingMetrics.Operation.AMEND, status, start);
+        return status;
+    }
+
+    private BookingStatus amendAndJournal(long bookingId, long slot, int units, int durationMinutes) {
+        Booking current = Booking.bookings.get(bookingId);
+        if (current == null) {
+            return BookingStatus.NOT_FOUND;
+        }
+        StadiumFacility facility = facilities.find(current.getFacilityKey());
+        if (!(facility instanceof ConferenceRoom)) {
+            durationMinutes = 0;
+        }
+        BookingStatus invalid = validate(facility, slot, units, durationMinutes);
+        if (invalid != null) {
+            return invalid;
+        }
+
+        CompletableFuture<Void> durable = NOT_JOURNALED;
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            // Canceled or amended since it was looked up
+            if (Booking.bookings.get(facility.getKey(), current.getSlot()) != current) {
+                return BookingStatus.NOT_FOUND;
+            }
+            // The booking keeps its units throughout and only the difference is reserved or
+            // released, so a failed amend never has to win back units someone else took meanwhile.
+            // Its seats are freed, so the amended party can get the best block for its new size.
+            unstore(facility, current.getSlot());
+            int extraUnits = units - current.getBookedUnits();
+            BookingStatus status = BookingStatus.SUCCESS;
+            Booking amended = null;
+            if (extraUnits > 0 && !facility.tryReserve(extraUnits)) {
+                status = BookingStatus.INSUFFICIENT_CAPACITY;
+            } else {
+                amended = createSeated(bookingId, facility, slot, units, durationMinutes);
+                if (amended == null) {
+                    if (extraUnits > 0) {
+                        facility.release(extraUnits);
+                    }
+                    status = BookingStatus.CONFLICT;
+                }
+            }
+            if (amended == null) {
+                // Put the original back; its slot, ID and seats were freed under this lock
+                if (restoreSeated(bookingId, facility, current.getSlot(), current.getBookedUnits(),
+                        current.getDurationMinutes(), current.getFirstSeat()) == null) {
+                    throw new IllegalStateException("Could not restore booking #" + bookingId + " after a failed amend.");
+                }
+                return status;
+            }
+            if (extraUnits < 0) {
+                facility.release(-extraUnits);
+            }
+            for (ChangeListener listener : changeListeners) {
+                listener.bookingRemoved(current);
+                listener.bookingAdded(amended);
+            }
+            if (journal != null) {
+                durable = journal.logAmendment(current.getSlot(), amended, () -> unamend(current));
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(durable);
+        return BookingStatus.SUCCESS;
+    }
+
+    // Undoes amendAndJournal when its journal record is lost: the original comes back in place of
+    // the amended booking, with the unit difference settled the other way round
+    private void unamend(Booking original) {
+        StadiumFacility facility = facilities.find(original.getFacilityKey());
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            // By ID, as in unbook; gone if it was canceled since and that was not undone
+            Booking live = Booking.bookings.get(original.getId());
+            if (live == null) {
+                return;
+            }
+            unstore(facility, live.getSlot());
+            int extraUnits = original.getBookedUnits() - live.getBookedUnits();
+            Booking restored = null;
+            if (extraUnits <= 0 || facility.tryReserve(extraUnits)) {
+                restored = restoreSeated(original.getId(), facility, original.getSlot(), original.getBookedUnits(),
+                        original.getDurationMinutes(), original.getFirstSeat());
+                if (restored == null && extraUnits > 0) {
+                    facility.release(extraUnits);
+                }
+            }
+            if (restored == null) {
+                facility.release(live.getBookedUnits());
+                System.out.println("Could not restore booking #" + original.getId() + " after its amendment was lost.");
+            } else if (extraUnits < 0) {
+                facility.release(-extraUnits);
+            }
+            for (ChangeListener listener : changeListeners) {
+                listener.bookingRemoved(live);
+                if (restored != null) {
+                    listener.bookingAdded(restored);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sets units of a facility aside for ttl, e.g. while the buyer pays; they stop counting as
+    // available at once. Returns the hold, or null if the facility doesn't exist, the units are
+    // invalid or there is not enough capacity. Holds live in memory only: after a restart their
+    // units are free again.
+    public SeatHold hold(String facilityName, int units, long ttl, TimeUnit unit) {
+        long start = System.nanoTime();
+        StadiumFacility facility = facilities.find(facilityName);
+        BookingStatus status;
+        SeatHold hold = null;
+        if (facility == null) {
+            status = BookingStatus.NOT_FOUND;
+        } else if (units <= 0 || ttl <= 0) {
+            status = BookingStatus.INVALID_REQUEST;
+        } else if (!holdUnits(facility, units)) {
+            status = BookingStatus.INSUFFICIENT_CAPACITY;
+        } else {
+            hold = new SeatHold(BookingIds.next(facility.getKey()), facility, units, ttl, unit);
+            // Pending before it goes on the wheel, so an expiry that fires at once finds it to remove;
+            // a hold settled before its timeout is set takes the timeout off as soon as it is
+            holds.put(hold.getId(), hold);
+            hold.setExpiry(holdWheel().schedule(hold, ttl, unit));
+            status = BookingStatus.SUCCESS;
+        }
+        Booking.metrics.record(BookingMetrics.Operation.HOLD, status, start);
+        return hold;
+    }
+
+    // Like every other change of a facility's units, under its stripe lock
+    private boolean holdUnits(StadiumFacility facility, int units) {
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            return facility.tryHold(units);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SeatHold hold(String facilityName, int units) {
+        return hold(facilityName, units, DEFAULT_HOLD_MINUTES, TimeUnit.MINUTES);
+    }
+
+    // The pending hold with the given ID, or null once it is confirmed, released or expired
+    public SeatHold getHold(long holdId) {
+        return holds.get(holdId);
+    }
+
+    public int getPendingHolds() {
+        return holds.size();
+    }
+
+    // Turns a hold into a booking of its units at the slot, using the hold's ID as the
+    // confirmation number. On CONFLICT the hold stays, so the buyer can pick another slot before
+    // it expires. The duration only applies to conference rooms.
+    public BookingStatus confirmHold(long holdId, long slot, int durationMinutes) {
+        long start = System.nanoTime();
+        BookingStatus status = confirmAndJournal(holdId, slot, durationMinutes);
+        Booking.metrics.record(BookingMetrics.Operation.CONFIRM_HOLD, status, start);
+        return status;
+    }
+
+    private BookingStatus confirmAndJournal(long holdId, long slot, int durationMinutes) {
+        SeatHold hold = holds.get(holdId);
+        if (hold == null) {
+            return BookingStatus.NOT_FOUND;
+        }
+        // The wheel fires up to a tick late; a hold past its time is expired here instead
+        if (hold.isPastExpiry()) {
+            expire(hold);
+            return BookingStatus.EXPIRED;
+        }
+        StadiumFacility facility = hold.getFacility();
+        if (!(facility instanceof ConferenceRoom)) {
+            durationMinutes = 0;
+        }
+        BookingStatus invalid = validate(facility, slot, hold.getUnits(), durationMinutes);
+        if (invalid != null) {
+            return invalid;
+        }
+
+        CompletableFuture<Void> durable;
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            if (hold.getState() != SeatHold.State.HELD) {
+                return hold.getState() == SeatHold.State.EXPIRED ? BookingStatus.EXPIRED : BookingStatus.NOT_FOUND;
+            }
+            Booking booking = createSeated(hold.getId(), facility, slot, hold.getUnits(), durationMinutes);
+            if (booking == null) {
+                return BookingStatus.CONFLICT;
+            }
+            // Settling only after the booking exists leaves nothing to undo on a conflict; if the
+            // wheel expired the hold meanwhile, its units are already back and the booking goes
+            if (!hold.settle(SeatHold.State.CONFIRMED)) {
+                unstore(facility, slot);
+                return BookingStatus.EXPIRED;
+            }
+            holds.remove(holdId, hold);
+            facility.confirmHold(hold.getUnits());
+            fireBookingAdded(booking);
+            durable = journalBooking(booking);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(durable);
+        return BookingStatus.SUCCESS;
+    }
+
+    // Gives a hold's units back before it expires; false if it is not pending any more
+    public boolean releaseHold(long holdId) {
+        long start = System.nanoTime();
+        SeatHold hold = holds.get(holdId);
+        boolean released = hold != null && settleAndRelease(hold, SeatHold.State.RELEASED);
+        Booking.metrics.record(BookingMetrics.Operation.RELEASE_HOLD,
+                released ? BookingStatus.SUCCESS : BookingStatus.NOT_FOUND, start);
+        return released;
+    }
+
+    // Called by the wheel for every hold whose time is up; holds settled before are skipped. The
+    // hold leaves the pending ones either way, so none can linger there once its time is up.
+    private void expire(SeatHold hold) {
+        settleAndRelease(hold, SeatHold.State.EXPIRED);
+        holds.remove(hold.getId(), hold);
+    }
+
+    // Settles a pending hold without a booking and gives its units back, under the facility's
+    // stripe lock like every other change of its units; false if the hold was settled before
+    private boolean settleAndRelease(SeatHold hold, SeatHold.State outcome) {
+        Lock lock = facilityLocks.lockFor(hold.getFacility());
+        lock.lock();
+        try {
+            if (!hold.settle(outcome)) {
+                return false;
+            }
+            holds.remove(hold.getId(), hold);
+            hold.getFacility().releaseHold(hold.getUnits());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TimingWheel<SeatHold> holdWheel() {
+        TimingWheel<SeatHold> wheel = holdWheel;
+        if (wheel == null) {
+            synchronized (holds) {
+                wheel = holdWheel;
+                if (wheel == null) {
+                    wheel = new TimingWheel<>(HOLD_TICK_MILLIS, TimeUnit.MILLISECONDS, HOLD_WHEEL_BUCKETS, "hold-expiry", this::expire);
+                    holdWheel = wheel;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    // Removes the booking at the slot, but only if it is the expected one when that is given
+    private Booking removeAndJournal(StadiumFacility facility, long slot, Booking expected) {
+        if (facility == null) {
+            return null;
+        }
+        Booking removed;
+        CompletableFuture<Void> durable = NOT_JOURNALED;
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            if (expected != null && Booking.bookings.get(facility.getKey(), slot) != expected) {
+                return null;
+            }
+            removed = removeBooking(facility, slot);
+            if (removed != null) {
+                for (ChangeListener listener : changeListeners) {
+                    listener.bookingRemoved(removed);
+                }
+            }
+            if (removed != null && journal != null) {
+                Booking canceled = removed;
+                durable = journal.logCancellation(removed.getFacilityName(), slot, () -> putBack(List.of(canceled)));
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(durable);
+        return removed;
+    }
+
+    private Booking removeBooking(StadiumFacility facility, long slot) {
+        Booking removed = unstore(facility, slot);
+        if (removed != null && removed.getBookedUnits() > 0) {
+            facility.release(removed.getBookedUnits());
+        }
+        return removed;
+    }
+
+    // Stores a booking whose units are already reserved. In a seating section it gets the best
+    // block of adjacent free seats; a party no row has room for is still booked, just without
+    // seats. Returns null, with the seats freed again, if the slot, interval or ID is taken.
+    private Booking createSeated(long id, StadiumFacility facility, long slot, int units, int durationMinutes) {
+        int firstSeat = facility instanceof SeatingSection ? ((SeatingSection) facility).allocateSeats(units) : Booking.NO_SEATS;
+        return storeWithSeats(id, facility, slot, units, durationMinutes, firstSeat < 0 ? Booking.NO_SEATS : firstSeat);
+    }
+
+    // Like createSeated, but takes exactly the given seats again, e.g. those of a booking being
+    // replayed or put back. If they are not free (or don't fit the section) it gets none.
+    private Booking restoreSeated(long id, StadiumFacility facility, long slot, int units, int durationMinutes,
+                                  int firstSeat) {
+        if (firstSeat != Booking.NO_SEATS) {
+            boolean taken;
+            try {
+                taken = facility instanceof SeatingSection && ((SeatingSection) facility).takeSeats(firstSeat, units);
+            } catch (IllegalArgumentException e) {
+                taken = false;
+            }
+            if (!taken) {
+                firstSeat = Booking.NO_SEATS;
+            }
+        }
+        return storeWithSeats(id, facility, slot, units, durationMinutes, firstSeat);
+    }
+
+    private Booking storeWithSeats(long id, StadiumFacility facility, long slot, int units, int durationMinutes,
+                                   int firstSeat) {
+        Booking booking = Booking.createBooking(id, facility.getKey(), slot, units, durationMinutes, firstSeat);
+        if (booking == null && firstSeat != Booking.NO_SEATS) {
+            ((SeatingSection) facility).releaseSeats(firstSeat, units);
+        }
+        return booking;
+    }
+
+    // Takes a booking out of the store and frees its seats; its units stay reserved
+    private Booking unstore(StadiumFacility facility, long slot) {
+        Booking removed = Booking.removeBooking(facility.getKey(), slot);
+        if (removed != null && removed.hasSeats() && facility instanceof SeatingSection) {
+            ((SeatingSection) facility).releaseSeats(removed.getFirstSeat(), removed.getBookedUnits());
+        }
+        return removed;
+    }
+
+    // Undoes a booking whose journal record is lost, unless it is already gone. Looked up by ID:
+    // later lost changes to it were undone first and may have left it a different object.
+    private void unbook(Booking booking) {
+        StadiumFacility facility = facilities.find(booking.getFacilityKey());
+        if (facility == null) {
+            return;
+        }
+        Lock lock = facilityLocks.lockFor(facility);
+        lock.lock();
+        try {
+            Booking live = Booking.bookings.get(booking.getId());
+            if (live != null) {
+                removeBooking(facility, live.getSlot());
+                for (ChangeListener listener : changeListeners) {
+                    listener.bookingRemoved(live);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        for (Booking booking : Booking.bookings) {  // Use the static bookings list from Booking class
-            if (booking.getClass().equals(bookingID)) {
-                Booking.bookings.remove(booking);  // Remove the booking if IDs match
-                return true;  // Return true if successfully canceled
+    private void fireBookingAdded(Booking booking) {
+        for (ChangeListener listener : changeListeners) {
+            listener.bookingAdded(booking);
+        }
+    }
+
+    // Registers a listener for facilities and bookings added or removed from now on
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Runs the changes with the per-change fsync waits skipped on this thread: every change is
+    // applied and journaled in order as usual, but returns as soon as its record is queued, so a
+    // single thread can apply changes far faster than the disk can sync them one at a time.
+    // Returns once everything journaled so far is durable. A crash in between loses a suffix of
+    // the changes, never anything from the middle.
+    public void deferDurability(Runnable changes) {
+        boolean outer = !durabilityDeferred.get();
+        durabilityDeferred.set(true);
+        try {
+            changes.run();
+        } finally {
+            if (outer) {
+                durabilityDeferred.set(false);
+            }
+        }
+        if (outer && journal != null) {
+            BookingJournal.awaitDurable(journal.flushed());
+        }
+    }
+
+    // Deferred changes still fail at once if the journal has already stopped
+    private void awaitDurable(CompletableFuture<Void> durable) {
+        if (!durabilityDeferred.get() || durable.isCompletedExceptionally()) {
+            BookingJournal.awaitDurable(durable);
+        }
+    }
+
+    private CompletableFuture<Void> journalBooking(Booking booking) {
+        return journal == null ? NOT_JOURNALED : journal.logBooking(booking, () -> unbook(booking));
+    }
+
+    // Writes a snapshot of all facilities and bookings. Booking activity pauses only while the
+    // state is copied into flat arrays; the file itself is written after the locks are released.
+    public void checkpoint() throws IOException {
+        if (snapshotFile == null || journal == null) {
+            throw new IllegalStateException("This manager has no snapshot file.");
+        }
+        synchronized (maintenanceLock) {
+            writeCheckpoint();
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        BookingSnapshot snapshot;
+        CompletableFuture<Void> durable;
+        facilityLocks.lockAll();
+        try {
+            List<StadiumFacility> facilityList = new ArrayList<>(facilities.asList());
+            Map<StadiumFacility, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < facilityList.size(); i++) {
+                indexes.put(facilityList.get(i), i);
+            }
+            int capacity = Booking.bookings.size();
+            int[] facilityIndexes = new int[capacity];
+            long[] slots = new long[capacity];
+            int[] units = new int[capacity];
+            int[] durations = new int[capacity];
+            long[] ids = new long[capacity];
+            int[] firstSeats = new int[capacity];
+            int count = 0;
+            for (Booking booking : Booking.bookings.all()) {
+                Integer index = indexes.get(facilities.find(booking.getFacilityKey()));
+                if (index == null || count == capacity) {
+                    continue; // not managed by this manager
+                }
+                facilityIndexes[count] = index;
+                slots[count] = booking.getSlot();
+                units[count] = booking.getBookedUnits();
+                durations[count] = booking.getDurationMinutes();
+                ids[count] = booking.getId();
+                firstSeats[count] = booking.getFirstSeat();
+                count++;
+            }
+            snapshot = new BookingSnapshot(facilityList, count, facilityIndexes, slots, units, durations, ids,
+                    firstSeats, journal.appendPosition());
+            durable = journal.flushed();
+        } finally {
+            facilityLocks.unlockAll();
+        }
+        // The snapshot must never claim journal records that might still be lost in a crash
+        BookingJournal.awaitDurable(durable);
+        snapshot.write(snapshotFile);
+    }
+
+    // Checkpoints in the background at a fixed interval
+    public synchronized void startCheckpoints(long interval, TimeUnit unit) {
+        if (checkpointsStarted) {
+            return;
+        }
+        checkpointsStarted = true;
+        scheduler().scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | UncheckedIOException e) {
+                System.out.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, interval, interval, unit);
+    }
+
+    // Opens the archive, finishes a sweep that a crash interrupted, and from then on moves bookings
+    // from before the start of the day keepDays ago into the archive at a fixed interval
+    public synchronized void startArchiving(Path archiveFile, int keepDays, long interval, TimeUnit unit) throws IOException {
+        if (archive != null) {
+            return;
+        }
+        archive = BookingArchive.open(archiveFile);
+        // Bookings that reached the archive before a crash kept their removal out of the journal
+        long archivedBefore = archive.getCutoff();
+        if (archivedBefore != Long.MIN_VALUE) {
+            synchronized (maintenanceLock) {
+                if (!removeAllBefore(archivedBefore).isEmpty() && journal != null) {
+                    BookingJournal.awaitDurable(journal.logArchived(archivedBefore));
+                }
+            }
+        }
+        scheduler().scheduleWithFixedDelay(() -> {
+            try {
+                archiveBefore(BookingSlot.pack(BookingSlot.today() - keepDays, 0));
+            } catch (IOException | UncheckedIOException e) {
+                System.out.println("Archiving failed: " + e.getMessage());
+            }
+        }, 0, interval, unit);
+    }
+
+    // Moves every booking before the cutoff slot out of the live structures into the archive and
+    // returns their units to the facilities. The bookings are removed facility by facility under
+    // each stripe lock, written to the archive and fsynced, and only then is the sweep journaled,
+    // so a crash at any point loses nothing: before the journal record, replay brings the bookings
+    // back, and the next startArchiving drops again whatever the archive already holds.
+    public int archiveBefore(long cutoffSlot) throws IOException {
+        BookingArchive target = archive;
+        if (target == null) {
+            throw new IllegalStateException("This manager has no archive.");
+        }
+        synchronized (maintenanceLock) {
+            List<Booking> removed = removeAllBefore(cutoffSlot);
+            if (removed.isEmpty()) {
+                return 0;
+            }
+            try {
+                target.append(cutoffSlot, removed);
+            } catch (IOException | RuntimeException e) {
+                putBack(removed);
+                throw e;
+            }
+            if (journal != null) {
+                BookingJournal.awaitDurable(journal.logArchived(cutoffSlot));
+            }
+            return removed.size();
+        }
+    }
+
+    // Removes every facility's bookings before the cutoff, grouped by facility
+    private List<Booking> removeAllBefore(long cutoffSlot) {
+        List<Booking> removed = new ArrayList<>();
+        for (StadiumFacility facility : facilities.asList()) {
+            Lock lock = facilityLocks.lockFor(facility);
+            lock.lock();
+            try {
+                removed.addAll(removeBefore(facility, cutoffSlot));
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!removed.isEmpty()) {
+            for (ChangeListener listener : changeListeners) {
+                listener.bookingsArchived(removed);
+            }
+        }
+        return removed;
+    }
+
+    private List<Booking> removeBefore(StadiumFacility facility, long cutoffSlot) {
+        List<Booking> removed = new ArrayList<>();
+        for (Booking booking : new ArrayList<>(Booking.bookings.between(facility.getKey(), Long.MIN_VALUE, cutoffSlot))) {
+            if (removeBooking(facility, booking.getSlot()) != null) {
+                removed.add(booking);
             }
         }
+        return removed;
+    }
+
+    // Restores bookings removed by a sweep whose archive write failed, or by a cancellation whose
+    // journal record was lost
+    private void putBack(List<Booking> removed) {
+        for (Booking booking : removed) {
+            StadiumFacility facility = facilities.find(booking.getFacilityKey());
+            if (facility == null) {
+                continue;
+            }
+            Lock lock = facilityLocks.lockFor(facility);
+            lock.lock();
+            try {
+                if (facility.tryReserve(booking.getBookedUnits())) {
+                    Booking restored = restoreSeated(booking.getId(), facility, booking.getSlot(),
+                            booking.getBookedUnits(), booking.getDurationMinutes(), booking.getFirstSeat());
+                    if (restored != null) {
+                        fireBookingAdded(restored);
+                    } else {
+                        facility.release(booking.getBookedUnits());
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Archived bookings with fromSlot <= slot < toSlot, of one facility or of all if facilityName is
+    // null. Reads only the archive blocks that overlap the range.
+    public List<Booking> getArchivedBookings(String facilityName, long fromSlot, long toSlot) throws IOException {
+        BookingArchive target = archive;
+        return target == null ? new ArrayList<>() : target.find(facilityName, fromSlot, toSlot);
+    }
+
+    // Latency histograms, outcome counts and per-facility gauges as plain text
+    public String getMetricsReport() {
+        return Booking.metrics.format(facilities.asList());
+    }
+
+    public void viewMetrics() {
+        System.out.print(getMetricsReport());
+    }
 
-        return false;  // Return false if no matching booking ID found
+    // Rewrites the file with the current metrics report at a fixed interval, and once more on close
+    public synchronized void startMetricsDump(Path file, long interval, TimeUnit unit) {
+        if (metricsFile != null) {
+            return;
+        }
+        metricsFile = file;
+        scheduler().scheduleWithFixedDelay(() -> {
+            try {
+                writeMetrics(file);
+            } catch (IOException e) {
+                System.out.println("Metrics dump failed: " + e.getMessage());
+            }
+        }, interval, interval, unit);
+    }
+
+    // Written to a temporary file and renamed, so readers never see a partial report
+    private void writeMetrics(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, getMetricsReport().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stadium-background");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    // Stops background work, writes a final snapshot and metrics dump and closes the journal
+    @Override
+    public synchronized void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        if (metricsFile != null) {
+            writeMetrics(metricsFile);
+        }
+        if (journal != null) {
+            // A failed journal's snapshot would claim records that were never written
+            if (snapshotFile != null && !journal.isFailed()) {
+                checkpoint();
+            }
+            journal.close();
+        }
+        if (archive != null) {
+            archive.close();
+            archive = null;
+        }
+        synchronized (holds) {
+            if (holdWheel != null) {
+                holdWheel.close();
+                holdWheel = null;
+            }
+        }
+    }
+
+    // Cancels by confirmation number given as text; false if it is not a number or not found
+    public boolean cancelBookingById(String bookingID) {
+        long id;
+        try {
+            id = Long.parseLong(bookingID.trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return cancel(id) != null;
     }
 }
@@ -0,0 +1,163 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Hashed timing wheel: a ring of buckets, one per tick, advanced by a single timer thread.
+// Scheduling an item is O(1) from any thread (it goes onto a lock-free queue the timer thread
+// drains into the bucket of its deadline tick), and each tick only visits its own bucket, so
+// expiring an item is O(1) too. Deadlines further out than one turn of the wheel stay in their
+// bucket until the turn they are due in. Cancelling is O(1) as well: the timeout is queued and the
+// timer thread unlinks it from its bucket on the next tick. Items fire up to one tick late, never
+// early; one cancelled concurrently with its expiry may still fire, so callbacks must tolerate that.
+public class TimingWheel<T> implements AutoCloseable {
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket<T>[] buckets;
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout<T>> cancelled = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> onExpiry;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService timer;
+    // Next tick to process; only touched by the timer thread
+    private long tick;
+
+    // A scheduled item; its links are only touched by the timer thread
+    public static final class Timeout<T> {
+        private final TimingWheel<T> wheel;
+        private final T item;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+        private Bucket<T> bucket;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(TimingWheel<T> wheel, T item, long deadlineTick) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        // Takes the item off the wheel without firing it
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                wheel.cancelled.add(this);
+            }
+        }
+    }
+
+    // Doubly linked, so a cancelled timeout can be unlinked without a search
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+    }
+
+    // bucketCount is rounded up to a power of two; onExpiry runs on the timer thread and must not block
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tick, TimeUnit unit, int bucketCount, String threadName, Consumer<T> onExpiry) {
+        if (tick <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Tick and bucket count must be positive.");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket<>();
+        }
+        this.onExpiry = onExpiry;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::advance, tick, tick, unit);
+    }
+
+    // Hands the item to onExpiry once the delay has passed, unless the returned timeout is cancelled
+    public Timeout<T> schedule(T item, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay));
+        // Round up, so nothing fires before its delay
+        Timeout<T> timeout = new Timeout<>(this, item, (deadline + tickNanos - 1) / tickNanos);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    // Processes every tick that has passed; a timer that fell behind catches up here
+    private void advance() {
+        long now = (System.nanoTime() - startNanos) / tickNanos;
+        while (tick <= now) {
+            for (Timeout<T> timeout; (timeout = pending.poll()) != null; ) {
+                if (!timeout.cancelled) {
+                    // Deadlines already passed go into the current bucket and fire right away
+                    buckets[(int) (Math.max(timeout.deadlineTick, tick) & mask)].add(timeout);
+                }
+            }
+            for (Timeout<T> timeout; (timeout = cancelled.poll()) != null; ) {
+                // Still pending ones are dropped above; fired ones are in no bucket any more
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+            Bucket<T> bucket = buckets[(int) (tick & mask)];
+            Timeout<T> timeout = bucket.head;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= tick) {
+                    bucket.remove(timeout);
+                    if (!timeout.cancelled) {
+                        expire(timeout.item);
+                    }
+                }
+                // Otherwise it is due in a later turn of the wheel and stays put
+                timeout = next;
+            }
+            tick++;
+        }
+    }
+
+    private void expire(T item) {
+        try {
+            onExpiry.accept(item);
+        } catch (RuntimeException e) {
+            // One failing callback must not stop the timer for everything else
+            System.out.println("Expiry failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
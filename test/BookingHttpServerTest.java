@@ -0,0 +1,220 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Starts a BookingHttpServer on an ephemeral localhost port and goes through every endpoint,
+// including the 400, 404, 405 and 409 answers, then fires concurrent POSTs at one facility and
+// checks it is never oversold. Exits with status 1 on failure.
+//
+// Usage: java BookingHttpServerTest [concurrentRequests]
+public class BookingHttpServerTest {
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    private static HttpClient client;
+    private static String base;
+
+    public static void main(String[] args) throws Exception {
+        int concurrentRequests = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+
+        StadiumManager manager = new StadiumManager();
+        try (BookingHttpServer server = new BookingHttpServer(manager,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            base = "http://localhost:" + server.getPort();
+
+            facilities();
+            availability();
+            bookings();
+            holds();
+            metrics();
+            concurrentPosts(manager, concurrentRequests);
+        }
+        manager.close();
+        System.out.println("BookingHttpServerTest passed.");
+    }
+
+    private static void facilities() throws Exception {
+        expect("GET", "/facilities", null, 200, "[]");
+        expect("POST", "/facilities", "name=North Stand&capacity=100&type=seating&seatType=VIP", 201, "\"North Stand\"");
+        expect("POST", "/facilities", "name=Board Room&capacity=12&type=conference&hasProjector=true", 201, "\"Board Room\"");
+        expect("POST", "/facilities", "name=north stand&capacity=5", 409, "already exists");
+        expect("POST", "/facilities", "name=Empty", 400, "positive capacity");
+        expect("POST", "/facilities", "name=Odd&capacity=5&type=tent", 400, "seating or conference");
+        expect("POST", "/facilities", "name=Odd&capacity=many", 400, "Invalid number");
+        expect("DELETE", "/facilities", null, 405, "Use GET or POST");
+        String list = expect("GET", "/facilities", null, 200, "\"North Stand\"");
+        check(list.contains("\"type\":\"SeatingSection\",\"seatType\":\"VIP\""), "seating section listed without its type: " + list);
+        check(list.contains("\"type\":\"ConferenceRoom\",\"hasProjector\":true"), "conference room listed without its type: " + list);
+    }
+
+    private static void availability() throws Exception {
+        String date = day(1);
+        expect("GET", "/availability?facility=" + encode("North Stand") + "&date=" + date + "&time=10:00", null, 200, "\"available\":true");
+        expect("GET", "/availability?facility=Nowhere&date=" + date + "&time=10:00", null, 404, "Facility not found");
+        expect("GET", "/availability?facility=" + encode("North Stand") + "&date=tomorrow&time=10:00", null, 400, "Invalid date");
+        expect("POST", "/availability", null, 405, "Use GET");
+    }
+
+    private static void bookings() throws Exception {
+        String date = day(1);
+        String booked = expect("POST", "/bookings", "facility=North Stand&date=" + date + "&time=18:00&units=4", 201, "\"SUCCESS\"");
+        check(booked.contains("\"seats\":\"Row 1, Seats 1-4\""), "booking got no seats: " + booked);
+        long id = id(booked);
+        expect("GET", "/availability?facility=" + encode("North Stand") + "&date=" + date + "&time=18:00", null, 200, "\"available\":false");
+        expect("POST", "/bookings", "facility=North Stand&date=" + date + "&time=18:00", 409, "\"CONFLICT\"");
+        expect("POST", "/bookings", "facility=North Stand&date=" + date + "&time=19:00&units=500", 409, "\"INSUFFICIENT_CAPACITY\"");
+        expect("POST", "/bookings", "facility=Nowhere&date=" + date + "&time=19:00", 404, "\"NOT_FOUND\"");
+        expect("POST", "/bookings", "facility=North Stand&date=" + date + "&time=25:00", 400, "Invalid date or time");
+        expect("POST", "/bookings", "facility=North Stand&date=" + day(-1) + "&time=10:00", 400, "\"PAST_DATE\"");
+        expect("POST", "/bookings", "facility=North Stand&date=" + date + "&time=19:00&units=0", 400, "\"INVALID_REQUEST\"");
+        expect("POST", "/bookings", "facility=North Stand&date=" + date + "&time=19:00&units=x", 400, "Invalid number");
+
+        // Meetings in a conference room conflict when their intervals overlap
+        expect("POST", "/bookings", "facility=Board Room&date=" + date + "&time=10:00&duration=60", 201, "\"SUCCESS\"");
+        expect("POST", "/bookings", "facility=Board Room&date=" + date + "&time=10:30&duration=60", 409, "\"CONFLICT\"");
+        expect("GET", "/availability?facility=" + encode("Board Room") + "&date=" + date + "&time=10:45&duration=15", null, 200, "\"available\":false");
+
+        expect("GET", "/bookings?id=" + id, null, 200, "\"time\":\"18:00\"");
+        expect("GET", "/bookings?id=999999999", null, 404, "Booking not found");
+        expect("GET", "/bookings?facility=Nowhere", null, 404, "Facility not found");
+        String list = expect("GET", "/bookings?facility=" + encode("north stand"), null, 200, "\"id\":" + id);
+        check(list.startsWith("[") && list.endsWith("]"), "booking list is not an array: " + list);
+
+        expect("PUT", "/bookings", "id=" + id + "&date=" + date + "&time=20:00&units=6", 200, "\"time\":\"20:00\"");
+        expect("PUT", "/bookings", "date=" + date + "&time=20:00", 400, "booking id is required");
+        expect("PUT", "/bookings", "id=999999999&date=" + date + "&time=20:00", 404, "\"NOT_FOUND\"");
+        expect("PUT", "/bookings", "id=" + id + "&date=" + date + "&time=99:00", 400, "Invalid date or time");
+
+        expect("DELETE", "/bookings?id=" + id, null, 200, "\"SUCCESS\"");
+        expect("DELETE", "/bookings?id=" + id, null, 404, "\"NOT_FOUND\"");
+        expect("DELETE", "/bookings?facility=" + encode("Board Room") + "&date=" + date + "&time=10:00", null, 200, "\"SUCCESS\"");
+        expect("DELETE", "/bookings?facility=" + encode("Board Room") + "&date=" + date + "&time=10:00", null, 404, "\"NOT_FOUND\"");
+        expect("DELETE", "/bookings?facility=" + encode("Board Room") + "&date=" + date, null, 400, "Invalid date or time");
+        expect("PATCH", "/bookings", null, 405, "Use GET, POST, PUT or DELETE");
+    }
+
+    private static void holds() throws Exception {
+        String date = day(2);
+        String held = expect("POST", "/holds", "facility=North Stand&units=3&minutes=5", 201, "\"state\":\"HELD\"");
+        long id = id(held);
+        expect("GET", "/holds?id=" + id, null, 200, "\"units\":3");
+        expect("PUT", "/holds", "id=" + id + "&date=" + date + "&time=12:00", 201, "\"SUCCESS\"");
+        expect("GET", "/holds?id=" + id, null, 404, "no longer pending");
+        expect("GET", "/bookings?id=" + id, null, 200, "\"units\":3");
+        expect("PUT", "/holds", "id=" + id + "&date=" + date + "&time=13:00", 404, "\"NOT_FOUND\"");
+
+        long released = id(expect("POST", "/holds", "facility=North Stand&units=2", 201, "\"state\":\"HELD\""));
+        expect("PUT", "/holds", "id=" + released + "&date=" + date + "&time=oops", 400, "Invalid date or time");
+        expect("DELETE", "/holds?id=" + released, null, 200, "\"SUCCESS\"");
+        expect("DELETE", "/holds?id=" + released, null, 404, "\"NOT_FOUND\"");
+
+        expect("POST", "/holds", "facility=North Stand&units=1000", 409, "Not enough capacity");
+        expect("POST", "/holds", "facility=Nowhere", 404, "Facility not found");
+        expect("POST", "/holds", "facility=North Stand&units=0", 400, "must be positive");
+        expect("GET", "/holds", null, 400, "missing id");
+        expect("PATCH", "/holds", null, 405, "Use GET, POST, PUT or DELETE");
+    }
+
+    private static void metrics() throws Exception {
+        HttpResponse<String> response = send("GET", "/metrics", null);
+        check(response.statusCode() == 200, "GET /metrics answered " + response.statusCode());
+        check(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"), "metrics are not plain text");
+        check(response.body().contains("makeBooking"), "metrics report lacks the bookings: " + response.body());
+        expect("POST", "/metrics", null, 405, "Use GET");
+    }
+
+    // Every request books one unit of a small section on its own slot, all at once
+    private static void concurrentPosts(StadiumManager manager, int requests) throws Exception {
+        int capacity = requests / 4;
+        expect("POST", "/facilities", "name=Hot Section&capacity=" + capacity + "&type=seating", 201, "\"SUCCESS\"");
+        String date = day(3);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            String time = String.format("%02d:%02d", i / 60 % 24, i % 60);
+            responses.add(client.sendAsync(request("POST", "/bookings", "facility=Hot Section&date=" + date + "&time=" + time),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        int created = 0;
+        int refused = 0;
+        for (CompletableFuture<HttpResponse<String>> future : responses) {
+            HttpResponse<String> response = future.join();
+            if (response.statusCode() == 201) {
+                created++;
+            } else if (response.statusCode() == 409 && response.body().contains("INSUFFICIENT_CAPACITY")) {
+                refused++;
+            } else {
+                check(false, "concurrent POST answered " + response.statusCode() + ": " + response.body());
+            }
+        }
+        check(created == capacity, created + " of " + requests + " concurrent bookings made on a capacity of " + capacity);
+        check(refused == requests - capacity, refused + " concurrent bookings refused, expected " + (requests - capacity));
+        check(manager.getBookedUnits("Hot Section") == capacity,
+                "counter says " + manager.getBookedUnits("Hot Section") + " units after " + created + " bookings");
+        System.out.println(requests + " concurrent POSTs: " + created + " booked, " + refused + " refused");
+    }
+
+    // Sends the request and checks the status code and that the body contains the given text
+    private static String expect(String method, String path, String form, int status, String contains) throws Exception {
+        HttpResponse<String> response = send(method, path, form);
+        check(response.statusCode() == status && response.body().contains(contains),
+                method + " " + path + (form == null ? "" : " [" + form + "]") + ": expected " + status + " with "
+                        + contains + ", got " + response.statusCode() + " " + response.body());
+        return response.body();
+    }
+
+    private static HttpResponse<String> send(String method, String path, String form) throws Exception {
+        return client.send(request(method, path, form), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest request(String method, String path, String form) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(base + path));
+        if (form == null) {
+            return builder.method(method, HttpRequest.BodyPublishers.noBody()).build();
+        }
+        return builder.header("Content-Type", "application/x-www-form-urlencoded")
+                .method(method, HttpRequest.BodyPublishers.ofString(encodeForm(form))).build();
+    }
+
+    // Encodes the values of a name=value&... form written out in plain text
+    private static String encodeForm(String form) {
+        StringBuilder sb = new StringBuilder();
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            sb.append(sb.length() == 0 ? "" : "&").append(pair, 0, equals + 1).append(encode(pair.substring(equals + 1)));
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static long id(String json) {
+        Matcher matcher = ID.matcher(json);
+        check(matcher.find(), "no id in " + json);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static String day(int fromToday) {
+        return LocalDate.now().plusDays(fromToday).toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+// Measures the retained heap per stored booking: a booking with its place in the slot and ID
+// indexes. Books the given number of bookings spread over the facilities in scrambled order, so
+// the indexes fill the way they would under live traffic, and compares the heap after a full GC
+// with the heap before. Exits with status 1 if a booking costs more than the budget.
+//
+// Usage: java BookingMemoryTest [bookings] [facilities]
+public class BookingMemoryTest {
+    // A Booking is 48 bytes and its index entries about 45 more, depending on how full the hash
+    // and chunk arrays happen to be
+    private static final int MAX_BYTES_PER_BOOKING = 110;
+
+    public static void main(String[] args) throws Exception {
+        int bookings = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int facilityCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        String[] names = new String[facilityCount];
+        for (int f = 0; f < facilityCount; f++) {
+            names[f] = "Memory " + f;
+        }
+        long firstSlot = BookingSlot.pack(BookingSlot.today() + 1, 0);
+        int perFacility = (bookings + facilityCount - 1) / facilityCount;
+        // Warms up everything the bookings need besides themselves, so it isn't counted
+        for (String name : names) {
+            Booking.addBooking(name, firstSlot - 1, 1, 0);
+            Booking.removeBooking(name, firstSlot - 1);
+        }
+
+        long before = usedHeap();
+        // Stepping by a number coprime to the count visits every booking once, scrambled
+        long step = 7919;
+        while (gcd(step, bookings) != 1) {
+            step += 2;
+        }
+        for (long k = 0, i = 0; k < bookings; k++, i = (i + step) % bookings) {
+            int booking = (int) i;
+            // Half-hour slots, one facility after another
+            long slot = firstSlot + (long) (booking % perFacility) * 30;
+            check(Booking.addBooking(names[booking / perFacility], slot, 1, 0), "booking " + booking + " was not stored");
+        }
+        long after = usedHeap();
+        check(Booking.bookings.size() == bookings, Booking.bookings.size() + " bookings stored instead of " + bookings);
+
+        double perBooking = (double) (after - before) / bookings;
+        System.out.printf("%,d bookings over %d facilities: %.1f bytes per booking (budget %d)%n",
+                bookings, facilityCount, perBooking, MAX_BYTES_PER_BOOKING);
+        check(perBooking <= MAX_BYTES_PER_BOOKING, "a stored booking takes " + Math.round(perBooking) + " bytes");
+
+        for (String name : names) {
+            for (long k = 0; k < perFacility; k++) {
+                Booking.removeBooking(name, firstSlot + k * 30);
+            }
+        }
+        check(Booking.bookings.isEmpty(), "bookings left after removing them all");
+        System.out.println("BookingMemoryTest passed.");
+    }
+
+    // Heap in use after collecting until it stops shrinking
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return used;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+// Checks the journal and the snapshot: every record type replays as written, a torn tail is
+// dropped and cut off, a record that passes its checksum but doesn't match its layout fails the
+// replay, a failed write undoes the lost changes newest first before anyone hears of it, and a
+// snapshot loads back exactly what was written. Exits with status 1 on failure.
+public class BookingPersistenceTest {
+    // Record type of a single booking, as BookingJournal writes it
+    private static final byte BOOKED = 2;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("stadium-persistence");
+        try {
+            replay(dir.resolve("replay.journal"));
+            tornTail(dir.resolve("torn.journal"));
+            strictLayout(dir.resolve("strict.journal"));
+            failStop();
+            snapshotRoundTrip(dir.resolve("stadium.snapshot"));
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+        System.out.println("BookingPersistenceTest passed.");
+    }
+
+    // Every record type comes back from a replay as it was logged, in order
+    private static void replay(Path file) throws IOException {
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 9 * 60);
+        Booking stand = new Booking(101, "Journal North", slot, 3, 0, 40);
+        Booking room = new Booking(102, "Journal Room", slot, 1, 90, Booking.NO_SEATS);
+        Booking lot = new Booking(103, "Journal Lot", slot + 30, 5, 0, Booking.NO_SEATS);
+        Booking amended = new Booking(101, "Journal North", slot + 60, 4, 0, 43);
+        try (BookingJournal journal = BookingJournal.open(file)) {
+            journal.replay(new Recorder());
+            journal.logFacilityAdded(new SeatingSection("Journal North", 500, "VIP", 20), null);
+            journal.logFacilityAdded(new ConferenceRoom("Journal Room", 12, true), null);
+            journal.logFacilityAdded(new StadiumFacility("Journal Lot", 40), null);
+            journal.logBooking(stand, null);
+            journal.logBookings(List.of(room, lot), null);
+            journal.logAmendment(slot, amended, null);
+            journal.logCancellation("Journal Lot", slot + 30, null);
+            BookingJournal.awaitDurable(journal.logArchived(slot - 1));
+        }
+
+        Recorder replayed = replayAll(file);
+        List<String> expected = List.of(
+                "facility SeatingSection Journal North 500 VIP 20",
+                "facility ConferenceRoom Journal Room 12 true",
+                "facility StadiumFacility Journal Lot 40",
+                booked(stand),
+                booked(room),
+                booked(lot),
+                "amended 101 Journal North " + slot + " -> " + (slot + 60) + " 4 0 43",
+                "canceled Journal Lot " + (slot + 30),
+                "archived " + (slot - 1));
+        check(replayed.events.equals(expected), "replay gave " + replayed.events + " instead of " + expected);
+    }
+
+    // A crash can leave half a record or garbage behind the last intact one: replay keeps every
+    // intact record, cuts the rest off, and the journal carries on from there
+    private static void tornTail(Path file) throws IOException {
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 12 * 60);
+        long intactEnd;
+        try (BookingJournal journal = BookingJournal.open(file)) {
+            journal.replay(new Recorder());
+            journal.logFacilityAdded(new StadiumFacility("Torn Lot", 40), null);
+            journal.logBooking(new Booking(201, "Torn Lot", slot, 1, 0, Booking.NO_SEATS), null);
+            intactEnd = journal.appendPosition();
+            BookingJournal.awaitDurable(journal.logBooking(new Booking(202, "Torn Lot", slot + 30, 1, 0, Booking.NO_SEATS), null));
+        }
+        long fullEnd = Files.size(file);
+
+        // Garbage after the last record
+        Files.write(file, new byte[] {0, 0, 0, 9, 1, 2, 3}, StandardOpenOption.APPEND);
+        check(replayAll(file).events.size() == 3, "garbage after the last record hid intact ones");
+        check(Files.size(file) == fullEnd, "garbage after the last record was not cut off");
+
+        // The last record cut short
+        truncate(file, fullEnd - 3);
+        check(replayAll(file).events.size() == 2, "a half-written record was replayed");
+        check(Files.size(file) == intactEnd, "a half-written record was not cut off");
+
+        // The last record damaged, so its checksum fails
+        try (BookingJournal journal = BookingJournal.open(file)) {
+            journal.replay(new Recorder());
+            BookingJournal.awaitDurable(journal.logBooking(new Booking(203, "Torn Lot", slot + 60, 1, 0, Booking.NO_SEATS), null));
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(raw.length() - 1);
+            int last = raw.read();
+            raw.seek(raw.length() - 1);
+            raw.write(last ^ 0xFF);
+        }
+        Recorder replayed = replayAll(file);
+        check(replayed.events.size() == 2, "a record with a bad checksum was replayed");
+        check(Files.size(file) == intactEnd, "a record with a bad checksum was not cut off");
+
+        // Appends after a replay go where the intact records end
+        try (BookingJournal journal = BookingJournal.open(file)) {
+            journal.replay(new Recorder());
+            BookingJournal.awaitDurable(journal.logCancellation("Torn Lot", slot, null));
+        }
+        replayed = replayAll(file);
+        check(replayed.events.equals(List.of("facility StadiumFacility Torn Lot 40",
+                        booked(new Booking(201, "Torn Lot", slot, 1, 0, Booking.NO_SEATS)),
+                        "canceled Torn Lot " + slot)),
+                "appending after a torn tail gave " + replayed.events);
+    }
+
+    // Each record type has one layout: a record with a valid checksum but bytes missing or left
+    // over fails the replay rather than being read some other way
+    private static void strictLayout(Path file) throws IOException {
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 15 * 60);
+        Files.write(file, record(booking(301, "Strict Lot", slot, true, 2)));
+        expectReplayFailure(file, "a booking record with trailing bytes was replayed");
+
+        Files.write(file, record(booking(302, "Strict Lot", slot, false, 0)));
+        expectReplayFailure(file, "a booking record without its first seat was replayed");
+
+        Files.write(file, record(booking(303, "Strict Lot", slot, true, 0)));
+        check(replayAll(file).events.equals(List.of("booked 303 Strict Lot " + slot + " 1 0 -1")),
+                "a well-formed hand-written booking record was not replayed");
+    }
+
+    // A write that fails stops the journal: the lost records are undone newest first, each before
+    // its future completes, and every later append is undone straight away
+    private static void failStop() throws IOException {
+        Path full = Path.of("/dev/full");
+        if (!Files.isWritable(full)) {
+            System.out.println("Fail-stop check SKIPPED: it needs /dev/full to make writes fail.");
+            return;
+        }
+        int count = 5;
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 18 * 60);
+        List<Integer> undone = Collections.synchronizedList(new ArrayList<>());
+        List<String> problems = Collections.synchronizedList(new ArrayList<>());
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<Void>[] futures = new CompletableFuture[count];
+        BookingJournal journal = BookingJournal.open(full);
+        try {
+            // Appends are queued under the journal's monitor and the writer needs it to fail them,
+            // so all of them are lost together
+            synchronized (journal) {
+                for (int i = 0; i < count; i++) {
+                    int index = i;
+                    futures[i] = journal.logBooking(new Booking(401 + i, "Full Lot", slot + i, 1, 0, Booking.NO_SEATS), () -> {
+                        if (futures[index].isDone()) {
+                            problems.add("record " + index + " was undone after its future completed");
+                        }
+                        undone.add(index);
+                    });
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                check(futures[i].handle((ok, error) -> error != null).join(), "record " + i + " was reported durable");
+            }
+            check(problems.isEmpty(), String.join(", ", problems));
+            check(undone.equals(List.of(4, 3, 2, 1, 0)), "lost records were undone in the order " + undone);
+            check(journal.isFailed(), "the journal did not stop after a failed write");
+
+            undone.clear();
+            CompletableFuture<Void> late = journal.logCancellation("Full Lot", slot, () -> undone.add(-1));
+            check(undone.equals(List.of(-1)), "an append after the failure was not undone straight away");
+            check(late.isCompletedExceptionally(), "an append after the failure did not fail");
+        } finally {
+            journal.close();
+        }
+    }
+
+    // A snapshot loads back every facility and booking it was written with, and only its own
+    // version, complete and with nothing after it, is accepted
+    private static void snapshotRoundTrip(Path file) throws IOException {
+        List<StadiumFacility> facilities = List.of(new SeatingSection("Snapshot North", 500, "VIP", 20),
+                new ConferenceRoom("Snapshot Room", 12, false), new StadiumFacility("Snapshot Lot", 40));
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 10 * 60);
+        new BookingSnapshot(facilities, 3, new int[] {0, 1, 2}, new long[] {slot, slot + 30, slot + 60},
+                new int[] {4, 1, 7}, new int[] {0, 60, 0}, new long[] {501, 502, 503},
+                new int[] {20, Booking.NO_SEATS, Booking.NO_SEATS}, 12345).write(file);
+
+        Recorder loaded = new Recorder();
+        check(BookingSnapshot.load(file, loaded) == 12345, "the snapshot's journal position was not kept");
+        List<String> expected = List.of(
+                "facility SeatingSection Snapshot North 500 VIP 20",
+                "facility ConferenceRoom Snapshot Room 12 false",
+                "facility StadiumFacility Snapshot Lot 40",
+                "booked 501 Snapshot North " + slot + " 4 0 20",
+                "booked 502 Snapshot Room " + (slot + 30) + " 1 60 -1",
+                "booked 503 Snapshot Lot " + (slot + 60) + " 7 0 -1");
+        check(loaded.events.equals(expected), "snapshot loaded " + loaded.events + " instead of " + expected);
+        check(BookingSnapshot.load(file.resolveSibling("missing.snapshot"), new Recorder()) == 0,
+                "a missing snapshot did not load as empty");
+
+        byte[] written = Files.readAllBytes(file);
+        byte[] otherVersion = written.clone();
+        ByteBuffer.wrap(otherVersion).putInt(4, ByteBuffer.wrap(written).getInt(4) - 1);
+        Files.write(file, otherVersion);
+        expectLoadFailure(file, "a snapshot of another version was loaded");
+
+        Files.write(file, Arrays.copyOf(written, written.length - 3));
+        expectLoadFailure(file, "a truncated snapshot was loaded");
+
+        Files.write(file, Arrays.copyOf(written, written.length + 1));
+        expectLoadFailure(file, "a snapshot with bytes after its last booking was loaded");
+    }
+
+    private static String booked(Booking booking) {
+        return "booked " + booking.getId() + " " + booking.getFacilityName() + " " + booking.getSlot() + " "
+                + booking.getBookedUnits() + " " + booking.getDurationMinutes() + " " + booking.getFirstSeat();
+    }
+
+    private static Recorder replayAll(Path file) throws IOException {
+        Recorder recorder = new Recorder();
+        try (BookingJournal journal = BookingJournal.open(file)) {
+            journal.replay(recorder);
+        }
+        return recorder;
+    }
+
+    private static void expectReplayFailure(Path file, String message) {
+        try {
+            replayAll(file);
+        } catch (IOException expected) {
+            return;
+        }
+        check(false, message);
+    }
+
+    private static void expectLoadFailure(Path file, String message) {
+        try {
+            BookingSnapshot.load(file, new Recorder());
+        } catch (IOException expected) {
+            return;
+        }
+        check(false, message);
+    }
+
+    // The payload of a BOOKED record, optionally without its first seat and with extra bytes after it
+    private static byte[] booking(long id, String facilityName, long slot, boolean withFirstSeat, int extraBytes)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BOOKED);
+        out.writeLong(id);
+        out.writeUTF(facilityName);
+        out.writeLong(slot);
+        out.writeInt(1);
+        out.writeInt(0);
+        if (withFirstSeat) {
+            out.writeInt(Booking.NO_SEATS);
+        }
+        out.write(new byte[extraBytes]);
+        return bytes.toByteArray();
+    }
+
+    // A journal record around the payload, with a valid length and checksum
+    private static byte[] record(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(8 + payload.length).putInt(payload.length).putInt((int) crc.getValue())
+                .put(payload).array();
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    // Writes down every replayed change as a line of text
+    private static final class Recorder implements BookingJournal.Listener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void facilityAdded(StadiumFacility facility) {
+            String event = "facility " + facility.getClass().getSimpleName() + " " + facility.getFacilityName()
+                    + " " + facility.getCapacity();
+            if (facility instanceof SeatingSection) {
+                SeatingSection section = (SeatingSection) facility;
+                event += " " + section.getSeatType() + " " + section.getSeatsPerRow();
+            } else if (facility instanceof ConferenceRoom) {
+                event += " " + ((ConferenceRoom) facility).isHasProjector();
+            }
+            events.add(event);
+        }
+
+        @Override
+        public void booked(long id, String facilityName, long slot, int bookedUnits, int durationMinutes, int firstSeat) {
+            events.add("booked " + id + " " + facilityName + " " + slot + " " + bookedUnits + " " + durationMinutes
+                    + " " + firstSeat);
+        }
+
+        @Override
+        public void canceled(String facilityName, long slot) {
+            events.add("canceled " + facilityName + " " + slot);
+        }
+
+        @Override
+        public void archived(long cutoffSlot) {
+            events.add("archived " + cutoffSlot);
+        }
+
+        @Override
+        public void amended(long id, String facilityName, long oldSlot, long slot, int bookedUnits, int durationMinutes,
+                            int firstSeat) {
+            events.add("amended " + id + " " + facilityName + " " + oldSlot + " -> " + slot + " " + bookedUnits + " "
+                    + durationMinutes + " " + firstSeat);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
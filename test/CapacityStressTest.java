@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Stress test for capacity reservation: many threads book, cancel, hold and amend on one hot VIP
+// section while a watcher keeps checking the counter. Fails (exit code 1) if the section is ever
+// oversold, or if its counter at the end differs from the units of the bookings actually stored.
+//
+// Usage: java CapacityStressTest [threads] [seconds]
+public class CapacityStressTest {
+    private static final String SECTION = "VIP Stand";
+    private static final int CAPACITY = 500;
+    private static final int SLOTS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+
+        reserveAndRelease(threads, seconds);
+        bookAndCancel(threads, seconds);
+        System.out.println("CapacityStressTest passed.");
+    }
+
+    // The bare primitive: every thread only gives back what it took, so the counter must always
+    // equal the sum of what the threads hold
+    private static void reserveAndRelease(int threads, long seconds) throws Exception {
+        StadiumFacility section = new SeatingSection(SECTION, CAPACITY, "VIP");
+        long[] held = new long[threads];
+        runConcurrently(threads, seconds, section::getCurrentBookings, (thread, random) -> {
+            int units = 1 + random.nextInt(8);
+            if (random.nextBoolean() && section.tryReserve(units)) {
+                held[thread] += units;
+            } else if (held[thread] >= units) {
+                section.release(units);
+                held[thread] -= units;
+            }
+        });
+        long total = 0;
+        for (long units : held) {
+            total += units;
+        }
+        check(section.getCurrentBookings() == total,
+                "reserve/release: counter " + section.getCurrentBookings() + " != units held " + total);
+    }
+
+    // The whole booking path through the manager
+    private static void bookAndCancel(int threads, long seconds) throws Exception {
+        StadiumManager manager = new StadiumManager();
+        manager.addSeatingSection(SECTION, CAPACITY, "VIP", 20);
+        StadiumFacility section = manager.getFacility(SECTION);
+        long firstSlot = BookingSlot.pack(BookingSlot.today() + 1, 0);
+        runConcurrently(threads, seconds, section::getCurrentBookings, (thread, random) -> {
+            long slot = firstSlot + random.nextInt(SLOTS);
+            int units = 1 + random.nextInt(10);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    manager.placeBooking(SECTION, slot, units, 0);
+                    break;
+                case 2:
+                    manager.cancel(SECTION, slot);
+                    break;
+                case 3: {
+                    Booking booking = Booking.bookings.get(SECTION, slot);
+                    if (booking != null) {
+                        manager.amend(booking.getId(), firstSlot + random.nextInt(SLOTS), units, 0);
+                    }
+                    break;
+                }
+                default: {
+                    SeatHold hold = manager.hold(SECTION, units);
+                    if (hold != null && (random.nextBoolean()
+                            || manager.confirmHold(hold.getId(), slot, 0) != BookingStatus.SUCCESS)) {
+                        manager.releaseHold(hold.getId());
+                    }
+                }
+            }
+        });
+        long stored = 0;
+        for (Booking booking : manager.getBookingsBetween(SECTION, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            stored += booking.getBookedUnits();
+        }
+        check(section.getHeldUnits() == 0, "manager: " + section.getHeldUnits() + " units still held");
+        check(section.getCurrentBookings() == stored,
+                "manager: counter " + section.getCurrentBookings() + " != units of stored bookings " + stored);
+        check(stored <= CAPACITY, "manager: " + stored + " units stored in a section of " + CAPACITY);
+        manager.close();
+    }
+
+    private interface Step {
+        void run(int thread, ThreadLocalRandom random);
+    }
+
+    private interface Counter {
+        long units();
+    }
+
+    // Runs the step in a loop on every thread for the given time, while this thread checks the
+    // counter never goes over capacity
+    private static void runConcurrently(int threads, long seconds, Counter counter, Step step) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        step.run(thread, random);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "stress-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long peak = 0;
+        while (System.nanoTime() < end) {
+            long units = counter.units();
+            peak = Math.max(peak, units);
+            check(units <= CAPACITY, units + " units taken in a section of " + CAPACITY);
+        }
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Worker failed", failure.get());
+        }
+        System.out.println(threads + " threads, peak " + peak + " of " + CAPACITY + " units");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.concurrent.TimeUnit;
+
+// Walks seat holds through each way they end: confirmed into a booking, released by the buyer,
+// and expired by the wheel. After each, the hold must be gone from the pending ones and its units
+// must no longer count as held. Ends with a burst of holds that expire almost at once, which must
+// not leave any behind. Exits with status 1 on failure.
+//
+// Usage: java SeatHoldTest [burstMillis]
+public class SeatHoldTest {
+    private static final int CAPACITY = 10;
+    // The wheel ticks every 100 ms; a hold is expired within a tick or two of its time
+    private static final long EXPIRY_WAIT_MILLIS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        try (StadiumManager manager = new StadiumManager()) {
+            confirm(manager);
+            release(manager);
+            expire(manager);
+            expireAtOnce(manager, args.length > 0 ? Long.parseLong(args[0]) : 500);
+        }
+        System.out.println("SeatHoldTest passed.");
+    }
+
+    private static void confirm(StadiumManager manager) {
+        StadiumFacility stand = addStand(manager, "Hold Confirm");
+        SeatHold hold = manager.hold(stand.getFacilityName(), 4);
+        check(hold != null && hold.getState() == SeatHold.State.HELD, "hold was not granted");
+        check(stand.getHeldUnits() == 4 && stand.getAvailableUnits() == CAPACITY - 4, "held units don't count against the stand");
+        check(manager.getHold(hold.getId()) == hold, "hold is not pending");
+
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 10 * 60);
+        check(manager.confirmHold(hold.getId(), slot, 0) == BookingStatus.SUCCESS, "hold was not confirmed");
+        check(hold.getState() == SeatHold.State.CONFIRMED, "confirmed hold is " + hold.getState());
+        check(manager.getHold(hold.getId()) == null, "confirmed hold is still pending");
+        check(stand.getHeldUnits() == 0, "confirmed units are still held");
+        check(stand.getCurrentBookings() == 4, "confirmed units are not booked");
+        check(Booking.bookings.get(hold.getId()) != null, "no booking under the hold's ID");
+
+        check(!manager.releaseHold(hold.getId()), "a confirmed hold was released");
+        check(manager.confirmHold(hold.getId(), slot + 60, 0) == BookingStatus.NOT_FOUND, "a hold was confirmed twice");
+        check(stand.getCurrentBookings() == 4, "settling a confirmed hold again changed the stand");
+    }
+
+    private static void release(StadiumManager manager) {
+        StadiumFacility stand = addStand(manager, "Hold Release");
+        SeatHold hold = manager.hold(stand.getFacilityName(), CAPACITY);
+        check(hold != null, "hold was not granted");
+        check(manager.hold(stand.getFacilityName(), 1) == null, "a hold was granted past capacity");
+
+        check(manager.releaseHold(hold.getId()), "hold was not released");
+        check(hold.getState() == SeatHold.State.RELEASED, "released hold is " + hold.getState());
+        check(manager.getHold(hold.getId()) == null, "released hold is still pending");
+        check(stand.getHeldUnits() == 0 && stand.getAvailableUnits() == CAPACITY, "released units are not back");
+        check(!manager.releaseHold(hold.getId()), "a hold was released twice");
+        check(stand.getAvailableUnits() == CAPACITY, "releasing twice gave units back twice");
+    }
+
+    private static void expire(StadiumManager manager) throws InterruptedException {
+        StadiumFacility stand = addStand(manager, "Hold Expire");
+        SeatHold hold = manager.hold(stand.getFacilityName(), 3, 200, TimeUnit.MILLISECONDS);
+        check(hold != null, "hold was not granted");
+        awaitSettled(manager, stand);
+        check(hold.getState() == SeatHold.State.EXPIRED, "expired hold is " + hold.getState());
+        check(manager.getHold(hold.getId()) == null, "expired hold is still pending");
+        check(stand.getAvailableUnits() == CAPACITY, "expired units are not back");
+
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 10 * 60);
+        check(manager.confirmHold(hold.getId(), slot, 0) != BookingStatus.SUCCESS, "an expired hold was confirmed");
+        check(!manager.releaseHold(hold.getId()), "an expired hold was released");
+        check(Booking.bookings.get(hold.getId()) == null, "an expired hold left a booking");
+    }
+
+    // Holds that are due before hold() even returns: the wheel may fire while the hold is still
+    // being set up, and none may stay pending or keep its units. Runs over many ticks of the wheel,
+    // so some holds are set up just as it fires.
+    private static void expireAtOnce(StadiumManager manager, long millis) throws InterruptedException {
+        StadiumFacility stand = addStand(manager, "Hold Burst", 1_000_000);
+        long holdCount = 0;
+        for (long end = System.currentTimeMillis() + millis; System.currentTimeMillis() < end; holdCount++) {
+            check(manager.hold(stand.getFacilityName(), 1, 1, TimeUnit.NANOSECONDS) != null, "hold " + holdCount + " was not granted");
+        }
+        awaitSettled(manager, stand);
+        System.out.println(holdCount + " holds expired at once, none left pending.");
+    }
+
+    private static StadiumFacility addStand(StadiumManager manager, String name) {
+        return addStand(manager, name, CAPACITY);
+    }
+
+    private static StadiumFacility addStand(StadiumManager manager, String name, int capacity) {
+        check(manager.addSeatingSection(name, capacity, "Regular", 5), "could not add " + name);
+        return manager.getFacility(name);
+    }
+
+    // Waits for the wheel to expire every pending hold of the stand
+    private static void awaitSettled(StadiumManager manager, StadiumFacility stand) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + EXPIRY_WAIT_MILLIS;
+        while ((manager.getPendingHolds() > 0 || stand.getHeldUnits() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        check(manager.getPendingHolds() == 0, manager.getPendingHolds() + " holds still pending after their time");
+        check(stand.getHeldUnits() == 0, stand.getHeldUnits() + " units still held after their holds expired");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
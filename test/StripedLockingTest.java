@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Checks that the manager locks per facility stripe: a booking held up under one facility's lock
+// must not hold up a facility on another stripe, but must hold up one on the same stripe. Then
+// measures booking throughput with one thread per core, each on its own facility, against a
+// single thread, and requires it to scale. The measured path includes everything bookings on
+// different facilities still share: the metrics histograms, the ID blocks and the ID index.
+// Exits with status 1 on failure; on a single core the scaling check is skipped.
+//
+// Usage: java StripedLockingTest [bookingsPerThread]
+public class StripedLockingTest {
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final int MAX_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int bookingsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        otherStripesDontWait();
+        throughput(bookingsPerThread);
+        System.out.println("StripedLockingTest passed.");
+    }
+
+    private static void otherStripesDontWait() throws Exception {
+        // The manager sizes its stripes the same way; facilities are striped by their key
+        FacilityLocks locks = new FacilityLocks();
+        StadiumManager manager = new StadiumManager();
+        String blocked = "Blocked";
+        manager.addSeatingSection(blocked, 100, "Regular", 10);
+        int blockedStripe = locks.stripeFor(manager.getFacility(blocked).getKey());
+        String sameStripe = null;
+        String otherStripe = null;
+        for (int i = 0; (sameStripe == null || otherStripe == null) && i <= locks.stripeCount(); i++) {
+            String name = "Section " + i;
+            manager.addSeatingSection(name, 100, "Regular", 10);
+            if (locks.stripeFor(manager.getFacility(name).getKey()) == blockedStripe) {
+                sameStripe = sameStripe == null ? name : sameStripe;
+            } else {
+                otherStripe = otherStripe == null ? name : otherStripe;
+            }
+        }
+
+        check(sameStripe != null && otherStripe != null, "facilities don't spread over the stripes");
+
+        // Listeners run under the facility's lock, so this one keeps it taken
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        manager.addChangeListener(new StadiumManager.ChangeListener() {
+            @Override
+            public void facilityAdded(StadiumFacility facility) {
+            }
+
+            @Override
+            public void bookingAdded(Booking booking) {
+                if (booking.getFacilityName().equals(blocked)) {
+                    entered.countDown();
+                    await(release);
+                }
+            }
+
+            @Override
+            public void bookingRemoved(Booking booking) {
+            }
+        });
+        long slot = BookingSlot.pack(BookingSlot.today() + 1, 12 * 60);
+        Thread holder = book(manager, blocked, slot);
+        check(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "the blocking booking never started");
+
+        Thread other = book(manager, otherStripe, slot);
+        other.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        check(!other.isAlive(), "a booking on another stripe waited for the blocked facility");
+
+        Thread same = book(manager, sameStripe, slot);
+        same.join(200);
+        check(same.isAlive(), "a booking on the same stripe did not wait for the blocked facility");
+
+        release.countDown();
+        for (Thread thread : new Thread[]{holder, same}) {
+            thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            check(!thread.isAlive(), "a booking was still waiting after the lock was released");
+        }
+        check(manager.getBookingsBetween(Long.MIN_VALUE, Long.MAX_VALUE).size() == 3, "not every booking was stored");
+        System.out.println("Stripe isolation: ok");
+        manager.close();
+    }
+
+    private static void throughput(int bookingsPerThread) throws Exception {
+        // More threads than cores would only measure the scheduler
+        int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        if (threads < 2) {
+            System.out.println("Scaling SKIPPED: it needs at least 2 cores, this machine has " + threads + ".");
+            return;
+        }
+        bookingsPerSecond(threads, threads, bookingsPerThread); // warm-up, so the JIT doesn't skew the first run
+        double single = bookingsPerSecond(1, 1, bookingsPerThread);
+        double shared = bookingsPerSecond(threads, 1, bookingsPerThread);
+        double spread = bookingsPerSecond(threads, threads, bookingsPerThread);
+        System.out.printf("%-30s %,12.0f bookings/s%n", "1 thread", single);
+        System.out.printf("%-30s %,12.0f bookings/s%n", threads + " threads, one facility", shared);
+        System.out.printf("%-30s %,12.0f bookings/s (%.1fx)%n", threads + " threads, own facility each", spread, spread / single);
+        // A single global lock or a shared hot counter would stay at about 1x
+        double required = Math.max(1.3, 0.4 * threads);
+        check(spread / single >= required, String.format("bookings on separate facilities scaled %.1fx on %d threads, need %.1fx",
+                spread / single, threads, required));
+    }
+
+    // Each thread books its own run of slots, round-robin over the facilities
+    private static double bookingsPerSecond(int threads, int facilityCount, int bookingsPerThread) throws Exception {
+        StadiumManager manager = new StadiumManager();
+        for (int f = 0; f < facilityCount; f++) {
+            manager.addSeatingSection("Throughput " + f, threads * bookingsPerThread, "Regular", 10);
+        }
+        long firstSlot = BookingSlot.pack(BookingSlot.today() + 1, 0);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String facility = "Throughput " + (t % facilityCount);
+            long from = firstSlot + (long) t * bookingsPerThread;
+            Thread worker = new Thread(() -> {
+                await(start);
+                for (int i = 0; i < bookingsPerThread; i++) {
+                    BookingStatus status = manager.placeBooking(facility, from + i, 1, 0).getStatus();
+                    if (status != BookingStatus.SUCCESS) {
+                        failure.compareAndSet(null, facility + " slot " + (from + i) + ": " + status);
+                        return;
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        check(failure.get() == null, "booking failed: " + failure.get());
+        // Bookings are global; clear them so the next run starts from the same size
+        for (long slot = firstSlot; slot < firstSlot + (long) threads * bookingsPerThread; slot++) {
+            Booking.removeBooking("Throughput " + ((slot - firstSlot) / bookingsPerThread % facilityCount), slot);
+        }
+        manager.close();
+        return (double) threads * bookingsPerThread * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private static Thread book(StadiumManager manager, String facility, long slot) {
+        Thread thread = new Thread(() -> manager.placeBooking(facility, slot, 1, 0));
+        thread.start();
+        return thread;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}